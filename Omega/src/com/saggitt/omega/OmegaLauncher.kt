@@ -36,13 +36,17 @@ import com.android.launcher3.views.OptionsPopupView
 import com.android.systemui.plugins.shared.LauncherOverlayManager
 import com.farmerbb.taskbar.lib.Taskbar
 import com.google.android.apps.nexuslauncher.OverlayCallbackImpl
+import com.saggitt.omega.allapps.AppLaunchRecorder
+import com.saggitt.omega.blur.BlurWallpaperProvider
 import com.saggitt.omega.gestures.GestureController
+import com.saggitt.omega.iconpack.IconPackProvider
 import com.saggitt.omega.popup.OmegaShortcuts
 import com.saggitt.omega.preferences.OmegaPreferences
 import com.saggitt.omega.preferences.OmegaPreferencesChangeCallback
 import com.saggitt.omega.theme.ThemeOverride
 import com.saggitt.omega.util.Config
-import com.saggitt.omega.util.DbHelper
+import java.io.FileDescriptor
+import java.io.PrintWriter
 import java.util.stream.Stream
 
 class OmegaLauncher : QuickstepLauncher(), OmegaPreferences.OnPreferenceChangeListener {
@@ -86,10 +90,6 @@ class OmegaLauncher : QuickstepLauncher(), OmegaPreferences.OnPreferenceChangeLi
 
         mPrefs.registerCallback(prefCallback)
         mPrefs.addOnPreferenceChangeListener("pref_hideStatusBar", this)
-
-        /*CREATE DB TO HANDLE APPS COUNT*/
-        val db = DbHelper(this)
-        db.close()
     }
 
     override fun getSupportedShortcuts(): Stream<SystemShortcut.Factory<*>> {
@@ -113,6 +113,24 @@ class OmegaLauncher : QuickstepLauncher(), OmegaPreferences.OnPreferenceChangeLi
     override fun onPause() {
         super.onPause()
         paused = true
+        AppLaunchRecorder.INSTANCE.get(this).flush()
+    }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        AppLaunchRecorder.INSTANCE.get(this).flush()
+        IconPackProvider.INSTANCE.get(this).onTrimMemory(level)
+    }
+
+    override fun dump(
+        prefix: String,
+        fd: FileDescriptor?,
+        writer: PrintWriter,
+        args: Array<String>?
+    ) {
+        super.dump(prefix, fd, writer, args)
+        IconPackProvider.INSTANCE.get(this).dump(prefix, writer)
+        BlurWallpaperProvider.getInstance(this).dump(prefix, writer)
     }
 
     private fun restartIfPending() {
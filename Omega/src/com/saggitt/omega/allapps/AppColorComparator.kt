@@ -22,37 +22,11 @@ import com.android.launcher3.allapps.AppInfoComparator
 import com.android.launcher3.model.data.AppInfo
 
 class AppColorComparator(context: Context?) : AppInfoComparator(context) {
+
     override fun compare(a: AppInfo, b: AppInfo): Int {
-        val hslA = FloatArray(3)
-        val hslB = FloatArray(3)
-        ColorUtils.colorToHSL(a.iconColor, hslA)
-        ColorUtils.colorToHSL(b.iconColor, hslB)
-        val h2A = remapHue(hslA[0])
-        val h2B = remapHue(hslB[0])
-        var s2A = remap(hslA[1])
-        var s2B = remap(hslB[1])
-        var l2A = remap(hslA[2])
-        var l2B = remap(hslB[2])
-        if (h2A % 2 == 1) {
-            s2A = REPETITIONS - s2A
-            l2A = REPETITIONS - l2A
-        }
-        if (h2B % 2 == 1) {
-            s2B = REPETITIONS - s2B
-            l2B = REPETITIONS - l2B
-        }
-        var result = h2A.compareTo(h2B)
-        if (result != 0) {
-            return result
-        }
-        result = l2A.compareTo(l2B)
-        if (result != 0) {
-            return result
-        }
-        result = s2A.compareTo(s2B)
-        return if (result != 0) {
-            result
-        } else super.compare(a, b)
+        val result = a.colorSortKey.compareTo(b.colorSortKey)
+        // The default order starts with the titles
+        return if (result != 0) result else super.compare(a, b)
     }
 
     companion object {
@@ -67,5 +41,23 @@ class AppColorComparator(context: Context?) : AppInfoComparator(context) {
         fun remap(value: Float): Int {
             return (value * REPETITIONS).toInt()
         }
+
+        /**
+         * Packs the remapped hue, lightness and saturation of [color] into an int which sorts
+         * the same way as comparing the three components one after the other.
+         */
+        @JvmStatic
+        fun getColorSortKey(color: Int): Int {
+            val hsl = FloatArray(3)
+            ColorUtils.colorToHSL(color, hsl)
+            val hue = remapHue(hsl[0])
+            var saturation = remap(hsl[1])
+            var lightness = remap(hsl[2])
+            if (hue % 2 == 1) {
+                saturation = REPETITIONS - saturation
+                lightness = REPETITIONS - lightness
+            }
+            return (hue shl 16) or (lightness shl 8) or saturation
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.allapps
+
+import android.content.Context
+import androidx.annotation.WorkerThread
+import com.android.launcher3.util.Executors.MODEL_EXECUTOR
+import com.android.launcher3.util.MainThreadInitializedObject
+import com.saggitt.omega.util.DbHelper
+
+/**
+ * Records app launches without touching the disk on the calling thread. Launches are
+ * coalesced in memory and written to the app_count table in one transaction on the model
+ * thread, either shortly after the last launch or when [flush] is called.
+ */
+class AppLaunchRecorder(private val context: Context) {
+
+    // Only accessed on MODEL_EXECUTOR
+    private val db by lazy { DbHelper(context) }
+
+    private val pendingCounts = HashMap<String, Int>()
+    private val pendingUsage = HashSet<String>()
+    private val flushRunnable = Runnable { flushPending() }
+
+    fun recordLaunch(packageName: String) {
+        AppUsageIndex.INSTANCE.get(context).onAppLaunched(packageName)
+        synchronized(pendingCounts) {
+            pendingCounts.merge(packageName, 1, Int::plus)
+            pendingUsage.add(packageName)
+        }
+        val handler = MODEL_EXECUTOR.handler
+        handler.removeCallbacks(flushRunnable)
+        handler.postDelayed(flushRunnable, FLUSH_DELAY_MS)
+    }
+
+    /**
+     * Schedules the pending launches to be written right away.
+     */
+    fun flush() {
+        MODEL_EXECUTOR.handler.removeCallbacks(flushRunnable)
+        MODEL_EXECUTOR.execute(flushRunnable)
+    }
+
+    /**
+     * Returns the persisted launch counts, including launches which were still pending.
+     */
+    @WorkerThread
+    fun loadCounts(): List<AppCountInfo> {
+        flushPending()
+        return db.appsCount
+    }
+
+    @WorkerThread
+    fun loadUsage(): Map<String, UsageHistogram> = db.appsUsage
+
+    @WorkerThread
+    private fun flushPending() {
+        val index = AppUsageIndex.INSTANCE.get(context)
+        val counts: Map<String, Int>
+        val usagePackages: Set<String>
+        synchronized(pendingCounts) {
+            counts = HashMap(pendingCounts)
+            pendingCounts.clear()
+            if (index.isLoaded) {
+                // Until the index is loaded it only knows part of the history, keep it pending
+                usagePackages = HashSet(pendingUsage)
+                pendingUsage.clear()
+            } else {
+                usagePackages = emptySet()
+            }
+        }
+        db.addAppCounts(counts)
+
+        if (usagePackages.isNotEmpty()) {
+            val now = System.currentTimeMillis()
+            val usage = HashMap<String, UsageHistogram>()
+            usagePackages.forEach { packageName ->
+                index.getUsageSnapshot(packageName)?.let { usage[packageName] = it }
+            }
+            db.saveAppsUsage(usage, index.removeExpiredUsage(now))
+            index.notifyChanged()
+        }
+    }
+
+    companion object {
+        private const val FLUSH_DELAY_MS = 5000L
+
+        @JvmField
+        val INSTANCE = MainThreadInitializedObject(::AppLaunchRecorder)
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.allapps
+
+import android.content.Context
+import androidx.annotation.VisibleForTesting
+import com.android.launcher3.Utilities
+import com.android.launcher3.model.data.AppInfo
+import com.android.launcher3.util.Executors.MAIN_EXECUTOR
+import com.android.launcher3.util.Executors.MODEL_EXECUTOR
+import com.android.launcher3.util.MainThreadInitializedObject
+import com.saggitt.omega.util.Config
+import java.util.Calendar
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Process wide, in-memory view of the launch statistics used to sort the drawer by usage.
+ * The tables are read once on the model thread and then kept up to date by [AppLaunchRecorder].
+ */
+class AppUsageIndex @VisibleForTesting @JvmOverloads constructor(
+    counts: List<AppCountInfo>,
+    usage: Map<String, UsageHistogram> = emptyMap()
+) {
+
+    private val counts = ConcurrentHashMap<String, Int>()
+    private val histograms = ConcurrentHashMap<String, UsageHistogram>()
+
+    private val changeListeners = CopyOnWriteArrayList<Runnable>()
+
+    // Launches recorded before the histograms were read, replayed once they are
+    private val launchesBeforeLoad = ArrayList<Pair<String, Long>>()
+
+    @Volatile
+    var isLoaded = true
+        private set
+
+    init {
+        counts.forEach { this.counts[it.packageName] = it.count }
+        histograms.putAll(usage)
+    }
+
+    private constructor(context: Context) : this(emptyList()) {
+        isLoaded = false
+        val recorder = AppLaunchRecorder.INSTANCE.get(context)
+        MODEL_EXECUTOR.execute {
+            val loadedCounts = recorder.loadCounts()
+            val loadedUsage = recorder.loadUsage()
+            synchronized(launchesBeforeLoad) {
+                loadedCounts.forEach { counts[it.packageName] = it.count }
+                histograms.putAll(loadedUsage)
+                launchesBeforeLoad.forEach { (packageName, time) ->
+                    recordHistogram(packageName, time)
+                }
+                launchesBeforeLoad.clear()
+                isLoaded = true
+            }
+            MAIN_EXECUTOR.execute {
+                val prefs = Utilities.getOmegaPrefs(context)
+                if (prefs.sortMode == Config.SORT_MOST_USED
+                    || prefs.sortMode == Config.SORT_MOST_USED_RECENT
+                ) {
+                    prefs.reloadApps()
+                }
+                changeListeners.forEach { it.run() }
+            }
+        }
+    }
+
+    /**
+     * Adds a [listener] called on the main thread when the usage is loaded, and every time
+     * the recorded launches are persisted.
+     */
+    fun addChangeListener(listener: Runnable) {
+        changeListeners.add(listener)
+    }
+
+    fun removeChangeListener(listener: Runnable) {
+        changeListeners.remove(listener)
+    }
+
+    /**
+     * Notifies the listeners that the usage has changed.
+     */
+    fun notifyChanged() {
+        MAIN_EXECUTOR.execute { changeListeners.forEach { it.run() } }
+    }
+
+    fun getCount(packageName: String): Int = counts[packageName] ?: 0
+
+    fun hasUsage(packageName: String): Boolean = histograms.containsKey(packageName)
+
+    @JvmOverloads
+    fun onAppLaunched(packageName: String, time: Long = System.currentTimeMillis()) {
+        synchronized(launchesBeforeLoad) {
+            if (!isLoaded) {
+                // The persisted count already includes this launch once loaded
+                launchesBeforeLoad.add(packageName to time)
+                return
+            }
+        }
+        counts.merge(packageName, 1, Int::plus)
+        recordHistogram(packageName, time)
+    }
+
+    private fun recordHistogram(packageName: String, time: Long) {
+        val calendar = Calendar.getInstance().apply { timeInMillis = time }
+        histograms.getOrPut(packageName) { UsageHistogram() }.recordLaunch(
+            time,
+            calendar.get(Calendar.HOUR_OF_DAY),
+            calendar.get(Calendar.DAY_OF_WEEK) - 1
+        )
+    }
+
+    /**
+     * Returns a copy of the usage of [packageName] which is safe to persist.
+     */
+    fun getUsageSnapshot(packageName: String): UsageHistogram? = histograms[packageName]?.copy()
+
+    /**
+     * Forgets the packages which haven't been used for long enough to have decayed away,
+     * and returns them so they can be deleted from the database.
+     */
+    fun removeExpiredUsage(time: Long): List<String> {
+        val expired = histograms.filterValues { it.getScore(time) < UsageHistogram.MIN_SCORE }.keys
+        expired.forEach { histograms.remove(it) }
+        return expired.toList()
+    }
+
+    /**
+     * Sorts [apps] by launch count, most used first. Apps with the same count keep their
+     * relative order, which makes this equivalent to sorting with [AppUsageComparator].
+     */
+    fun sortByUsage(apps: MutableList<AppInfo>) {
+        sortDescending(apps) { getCount(it.componentName.packageName) }
+    }
+
+    /**
+     * Sorts [apps] by their decayed usage, weighted towards the apps which are usually
+     * launched at this time of the day and on this day of the week.
+     */
+    @JvmOverloads
+    fun sortByRecentUsage(apps: MutableList<AppInfo>, time: Long = System.currentTimeMillis()) {
+        val calendar = Calendar.getInstance().apply { timeInMillis = time }
+        val hourOfDay = calendar.get(Calendar.HOUR_OF_DAY)
+        val dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK) - 1
+        sortDescending(apps) {
+            val rank = histograms[it.componentName.packageName]
+                ?.getRank(time, hourOfDay, dayOfWeek) ?: 0f
+            // Bits of non negative floats sort in the same order as their values
+            java.lang.Float.floatToRawIntBits(rank)
+        }
+    }
+
+    /**
+     * Stable, descending sort over a non negative int key which is computed once per app.
+     */
+    private inline fun sortDescending(apps: MutableList<AppInfo>, key: (AppInfo) -> Int) {
+        val size = apps.size
+        if (size < 2) return
+
+        // Pack the inverted key in the high bits and the original position in the low bits,
+        // so a single primitive sort yields a stable, descending order.
+        val keys = LongArray(size)
+        for (i in 0 until size) {
+            keys[i] = ((Int.MAX_VALUE - key(apps[i])).toLong() shl 32) or i.toLong()
+        }
+        keys.sort()
+
+        val sorted = arrayOfNulls<AppInfo>(size)
+        for (i in 0 until size) {
+            sorted[i] = apps[(keys[i] and 0xFFFFFFFFL).toInt()]
+        }
+        for (i in 0 until size) {
+            apps[i] = sorted[i]!!
+        }
+    }
+
+    companion object {
+        @JvmField
+        val INSTANCE = MainThreadInitializedObject(::AppUsageIndex)
+    }
+}
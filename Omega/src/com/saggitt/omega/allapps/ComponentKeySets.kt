@@ -0,0 +1,85 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.allapps
+
+import android.content.ComponentName
+import android.content.Context
+import android.os.UserHandle
+import com.android.launcher3.Utilities
+import com.android.launcher3.util.ComponentKey
+import com.android.launcher3.util.MainThreadInitializedObject
+import com.saggitt.omega.preferences.OmegaPreferences
+
+/**
+ * Immutable snapshots of the hidden and protected apps, rebuilt on the main thread whenever the
+ * backing preference changes. Reads don't lock and are safe from any thread.
+ *
+ * The snapshots are rebuilt by the preferences before they reload the apps, so that the model
+ * thread never filters the apps with the previous sets.
+ */
+class ComponentKeySets(private val context: Context) {
+
+    @Volatile
+    private var hiddenApps: Set<ComponentKey> = emptySet()
+
+    @Volatile
+    private var protectedApps: Set<ComponentKey> = emptySet()
+
+    init {
+        val prefs = Utilities.getOmegaPrefs(context)
+        onValueChanged(KEY_HIDDEN_APPS, prefs)
+        onValueChanged(KEY_PROTECTED_APPS, prefs)
+    }
+
+    fun onValueChanged(key: String, prefs: OmegaPreferences) {
+        when (key) {
+            KEY_HIDDEN_APPS -> hiddenApps = parseHiddenApps(prefs.hiddenAppSet)
+            KEY_PROTECTED_APPS -> protectedApps = prefs.protectedAppsSet
+                .mapTo(HashSet()) { Utilities.makeComponentKey(context, it) }
+        }
+    }
+
+    fun isHidden(key: ComponentKey): Boolean = hiddenApps.contains(key)
+
+    fun isProtected(key: ComponentKey): Boolean = protectedApps.contains(key)
+
+    /**
+     * Hidden apps are stored as [ComponentKey.toString], which encodes the user id.
+     */
+    private fun parseHiddenApps(entries: Set<String>): Set<ComponentKey> {
+        val keys = HashSet<ComponentKey>(entries.size)
+        entries.forEach { entry ->
+            val sep = entry.indexOf('#')
+            if (sep < 0) return@forEach
+            val componentName = ComponentName.unflattenFromString(entry.substring(0, sep))
+                ?: return@forEach
+            val userId = entry.substring(sep + 1).toIntOrNull() ?: return@forEach
+            keys.add(ComponentKey(componentName, UserHandle.of(userId)))
+        }
+        return keys
+    }
+
+    companion object {
+        const val KEY_HIDDEN_APPS = "hidden_app_set"
+        const val KEY_PROTECTED_APPS = "protected_app_set"
+
+        @JvmField
+        val INSTANCE = MainThreadInitializedObject(::ComponentKeySets)
+    }
+}
@@ -26,9 +26,11 @@ import com.android.launcher3.util.ComponentKey
 
 class CustomAppFilter(private val mContext: Context) : OmegaAppFilter(mContext) {
 
+    private val componentKeySets by lazy { ComponentKeySets.INSTANCE.get(mContext) }
+
     override fun shouldShowApp(componentName: ComponentName?, user: UserHandle?): Boolean {
         return super.shouldShowApp(componentName, user)
-                && (user == null || !isHiddenApp(mContext, ComponentKey(componentName, user)))
+                && (user == null || !componentKeySets.isHidden(ComponentKey(componentName, user)))
     }
 
     companion object {
@@ -44,7 +46,7 @@ class CustomAppFilter(private val mContext: Context) : OmegaAppFilter(mContext)
         }
 
         fun isHiddenApp(context: Context?, key: ComponentKey?): Boolean {
-            return getHiddenApps(context).contains(key.toString())
+            return key != null && ComponentKeySets.INSTANCE.get(context).isHidden(key)
         }
 
         // This can't be null anyway
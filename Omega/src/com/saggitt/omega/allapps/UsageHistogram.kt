@@ -0,0 +1,121 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.allapps
+
+import java.nio.ByteBuffer
+import kotlin.math.exp
+
+/**
+ * Launch history of a single package. Keeps an exponentially decayed launch score together with
+ * hour-of-day and day-of-week buckets that decay at the same rate, so the memory used per
+ * package is constant no matter how many launches are recorded.
+ */
+class UsageHistogram(
+    private var score: Float = 0f,
+    private var lastUpdate: Long = 0L,
+    private val hours: FloatArray = FloatArray(HOURS_PER_DAY),
+    private val days: FloatArray = FloatArray(DAYS_PER_WEEK)
+) {
+
+    @Synchronized
+    fun recordLaunch(time: Long, hourOfDay: Int, dayOfWeek: Int) {
+        val factor = decayFactor(time)
+        if (factor != 1f) {
+            score *= factor
+            for (i in hours.indices) hours[i] *= factor
+            for (i in days.indices) days[i] *= factor
+        }
+        score += 1f
+        hours[hourOfDay] += 1f
+        days[dayOfWeek] += 1f
+        lastUpdate = maxOf(lastUpdate, time)
+    }
+
+    /**
+     * Returns the decayed launch score at [time], without any time of day weighting.
+     */
+    @Synchronized
+    fun getScore(time: Long): Float = score * decayFactor(time)
+
+    /**
+     * Returns the decayed launch score at [time], boosted by how often the package was
+     * launched at the same hour of the day and on the same day of the week.
+     */
+    @Synchronized
+    fun getRank(time: Long, hourOfDay: Int, dayOfWeek: Int): Float {
+        if (score <= 0f) return 0f
+        // Both shares are ratios of values decayed by the same factor, so they need no decay
+        val hourShare = hours[hourOfDay] / score
+        val dayShare = days[dayOfWeek] / score
+        return score * decayFactor(time) *
+                (1f + HOUR_WEIGHT * hourShare + DAY_WEIGHT * dayShare)
+    }
+
+    @Synchronized
+    fun copy() = UsageHistogram(score, lastUpdate, hours.copyOf(), days.copyOf())
+
+    val lastUpdateTime: Long
+        @Synchronized get() = lastUpdate
+
+    val rawScore: Float
+        @Synchronized get() = score
+
+    @Synchronized
+    fun bucketsToByteArray(): ByteArray {
+        val buffer = ByteBuffer.allocate((HOURS_PER_DAY + DAYS_PER_WEEK) * 4)
+        hours.forEach { buffer.putFloat(it) }
+        days.forEach { buffer.putFloat(it) }
+        return buffer.array()
+    }
+
+    private fun decayFactor(time: Long): Float {
+        val elapsed = time - lastUpdate
+        if (elapsed <= 0 || lastUpdate == 0L) return 1f
+        return exp(-LN_2 * elapsed / HALF_LIFE_MS).toFloat()
+    }
+
+    companion object {
+        const val HOURS_PER_DAY = 24
+        const val DAYS_PER_WEEK = 7
+
+        // A launch counts half as much after a week
+        const val HALF_LIFE_MS = 7 * 24 * 60 * 60 * 1000.0
+        private const val LN_2 = 0.6931471805599453
+
+        private const val HOUR_WEIGHT = 2f
+        private const val DAY_WEIGHT = 0.5f
+
+        /**
+         * Score under which a package is forgotten, a single launch gets there in about a month.
+         */
+        const val MIN_SCORE = 0.05f
+
+        @JvmStatic
+        fun fromDb(score: Float, lastUpdate: Long, buckets: ByteArray?): UsageHistogram {
+            val hours = FloatArray(HOURS_PER_DAY)
+            val days = FloatArray(DAYS_PER_WEEK)
+            if (buckets != null && buckets.size == (HOURS_PER_DAY + DAYS_PER_WEEK) * 4) {
+                val buffer = ByteBuffer.wrap(buckets)
+                for (i in hours.indices) hours[i] = buffer.float
+                for (i in days.indices) days[i] = buffer.float
+            }
+            return UsageHistogram(score, lastUpdate, hours, days)
+        }
+    }
+}
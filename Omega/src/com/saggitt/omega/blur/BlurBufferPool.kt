@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) 2020 Omega Launcher
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.saggitt.omega.blur
+
+import android.graphics.Bitmap
+import android.graphics.Color
+
+/**
+ * Small pool of the downsampled ARGB_8888 buffers used by the blur pipeline. The wallpaper
+ * size rarely changes, so a released buffer can almost always be reused as is, or be
+ * reconfigured in place when it is large enough.
+ */
+class BlurBufferPool(private val maxSize: Int) {
+
+    private val buffers = ArrayList<Bitmap>(maxSize)
+
+    /**
+     * Returns a cleared, mutable buffer of the given size.
+     */
+    @Synchronized
+    fun obtain(width: Int, height: Int): Bitmap {
+        var index = buffers.indexOfFirst { it.width == width && it.height == height }
+        if (index < 0) {
+            val byteCount = width * height * 4
+            index = buffers.indexOfFirst { it.allocationByteCount >= byteCount }
+        }
+        if (index < 0) {
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        }
+        val buffer = buffers.removeAt(index)
+        if (buffer.width != width || buffer.height != height) {
+            buffer.reconfigure(width, height, Bitmap.Config.ARGB_8888)
+        }
+        buffer.eraseColor(Color.TRANSPARENT)
+        return buffer
+    }
+
+    /**
+     * Gives [buffer] back to the pool. The caller must not use it afterwards.
+     */
+    @Synchronized
+    fun release(buffer: Bitmap) {
+        if (buffer.isRecycled || buffers.any { it === buffer }) return
+        if (!buffer.isMutable || buffer.config != Bitmap.Config.ARGB_8888
+            || buffers.size >= maxSize
+        ) {
+            buffer.recycle()
+            return
+        }
+        buffers.add(buffer)
+    }
+
+    @Synchronized
+    fun clear() {
+        buffers.forEach(Bitmap::recycle)
+        buffers.clear()
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2020 Omega Launcher
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.saggitt.omega.blur
+
+import android.content.Context
+import android.util.Log
+import androidx.annotation.WorkerThread
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * Keeps the last blurred wallpaper on disk, so that a cold start can show the blur without
+ * decoding the full size wallpaper again. Only one entry is kept, identified by a key built
+ * from the wallpaper id and the blur params.
+ *
+ * The file is a small header (magic, format version, full width and height, buffer width and
+ * height) followed by the raw ARGB_8888 pixels of the downsampled buffer.
+ */
+class BlurDiskCache(context: Context) {
+
+    private val cacheDir = File(context.cacheDir, "blur")
+
+    @WorkerThread
+    fun read(key: String, pool: BlurBufferPool): BlurWallpaperProvider.Blurred? {
+        val file = getFile(key)
+        if (!file.exists()) return null
+        try {
+            RandomAccessFile(file, "r").use { raf ->
+                val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return null
+                val width = buffer.getInt()
+                val height = buffer.getInt()
+                val bufferWidth = buffer.getInt()
+                val bufferHeight = buffer.getInt()
+                if (buffer.remaining() != bufferWidth * bufferHeight * 4) return null
+                val bitmap = pool.obtain(bufferWidth, bufferHeight)
+                bitmap.copyPixelsFromBuffer(buffer)
+                return BlurWallpaperProvider.Blurred(bitmap, width, height)
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to read blur cache", e)
+            file.delete()
+            return null
+        }
+    }
+
+    @WorkerThread
+    fun write(key: String, blurred: BlurWallpaperProvider.Blurred) {
+        val bitmap = blurred.bitmap
+        val buffer = ByteBuffer.allocate(HEADER_SIZE + bitmap.byteCount)
+            .order(ByteOrder.LITTLE_ENDIAN)
+        buffer.putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putInt(blurred.width)
+            .putInt(blurred.height)
+            .putInt(bitmap.width)
+            .putInt(bitmap.height)
+        bitmap.copyPixelsToBuffer(buffer)
+        buffer.flip()
+
+        cacheDir.mkdirs()
+        val file = getFile(key)
+        val tmp = File(cacheDir, file.name + ".tmp")
+        try {
+            FileOutputStream(tmp).use { it.channel.write(buffer) }
+            if (!tmp.renameTo(file)) {
+                tmp.delete()
+                return
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to write blur cache", e)
+            tmp.delete()
+            return
+        }
+        cacheDir.listFiles()?.forEach { if (it != file) it.delete() }
+    }
+
+    private fun getFile(key: String) = File(cacheDir, "$key.bin")
+
+    companion object {
+        private const val TAG = "BlurDiskCache"
+
+        private const val MAGIC = 0x424c5552 // BLUR
+        private const val FORMAT_VERSION = 1
+        private const val HEADER_SIZE = 6 * 4
+    }
+}
@@ -25,22 +25,34 @@ import com.saggitt.omega.preferences.OmegaPreferences
 
 class BlurWallpaperFilter(private val context: Context) : WallpaperFilter {
 
-    private var blurRadius = 25
+    var blurRadius = 25
+        private set
 
     override fun applyPrefs(prefs: OmegaPreferences) {
         blurRadius = prefs.blurRadius / BlurWallpaperProvider.DOWNSAMPLE_FACTOR
         blurRadius = blurRadius.coerceAtLeast(1).coerceAtMost(25)
     }
 
-    override fun apply(wallpaper: Bitmap): WallpaperFilter.ApplyTask {
+    /**
+     * Blurs [wallpaper] in place. The wallpaper is expected to be downsampled by
+     * [BlurWallpaperProvider.DOWNSAMPLE_FACTOR] already, which makes it small enough for the
+     * native stack blur and avoids setting up a GL context for each pass.
+     */
+    override fun apply(wallpaper: Bitmap) = apply(wallpaper, blurRadius)
+
+    /**
+     * Same as [apply], but with a radius captured when the blur was requested, so that a newer
+     * call to [applyPrefs] doesn't change the outcome of a blur already scheduled.
+     */
+    fun apply(wallpaper: Bitmap, radius: Int): WallpaperFilter.ApplyTask {
         return WallpaperFilter.ApplyTask.create { emitter ->
             HokoBlur.with(context)
-                    .scheme(HokoBlur.SCHEME_OPENGL)
+                    .scheme(HokoBlur.SCHEME_NATIVE)
                     .mode(HokoBlur.MODE_STACK)
-                    .radius(blurRadius)
-                    .sampleFactor(BlurWallpaperProvider.DOWNSAMPLE_FACTOR.toFloat())
+                    .radius(radius)
+                    .sampleFactor(1f)
                     .forceCopy(false)
-                    .needUpscale(true)
+                    .needUpscale(false)
                     .processor()
                     .asyncBlur(wallpaper, object : AsyncBlurTask.Callback {
                         override fun onBlurSuccess(bitmap: Bitmap) {
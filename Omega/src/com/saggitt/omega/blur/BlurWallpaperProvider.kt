@@ -21,15 +21,22 @@ import android.annotation.SuppressLint
 import android.app.WallpaperManager
 import android.content.Context
 import android.graphics.*
+import android.graphics.drawable.Drawable
 import android.os.Build
+import android.os.SystemClock
 import android.util.DisplayMetrics
 import android.util.Log
+import android.util.LruCache
 import android.view.WindowManager
 import android.widget.Toast
+import androidx.annotation.WorkerThread
 import com.android.launcher3.R
 import com.android.launcher3.Utilities
 import com.android.launcher3.util.Executors.MAIN_EXECUTOR
+import com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR
 import com.saggitt.omega.util.*
+import java.io.PrintWriter
+import java.util.concurrent.atomic.AtomicInteger
 
 class BlurWallpaperProvider(val context: Context) {
 
@@ -37,13 +44,34 @@ class BlurWallpaperProvider(val context: Context) {
     private val mWallpaperManager: WallpaperManager = WallpaperManager.getInstance(context)
     private val mListeners = ArrayList<Listener>()
     private val mDisplayMetrics = DisplayMetrics()
-    var wallpaper: Bitmap? = null
-        private set(value) {
-            if (field != value) {
-                field?.recycle()
-                field = value
+    private val bufferPool = BlurBufferPool(BUFFER_POOL_SIZE)
+    private val diskCache = BlurDiskCache(context)
+
+    // Recently used blur outputs, so that going back to a previous radius is instant
+    private val blurCache = object : LruCache<String, Blurred>(BLUR_CACHE_SIZE) {
+        override fun sizeOf(key: String, value: Blurred) = value.bitmap.allocationByteCount
+
+        override fun entryRemoved(
+            evicted: Boolean,
+            key: String,
+            oldValue: Blurred,
+            newValue: Blurred?
+        ) {
+            // Drawables and render thread display lists may still sample a published bitmap,
+            // only buffers that were never shown can be reused
+            if (!oldValue.published) {
+                bufferPool.release(oldValue.bitmap)
             }
         }
+    }
+
+    /**
+     * The blurred wallpaper, downsampled by [DOWNSAMPLE_FACTOR]. It has to be drawn scaled up
+     * by [blurScale] to match the screen. A replaced bitmap is left to the GC rather than
+     * pooled, listeners may still be drawing it.
+     */
+    var wallpaper: Bitmap? = null
+        private set
     var placeholder: Bitmap? = null
         private set(value) {
             if (field != value) {
@@ -51,26 +79,35 @@ class BlurWallpaperProvider(val context: Context) {
                 field = value
             }
         }
+    val blurScale get() = DOWNSAMPLE_FACTOR.toFloat()
     private var mOffset: Float = 0.6f
 
-    private val mVibrancyPaint = Paint(Paint.FILTER_BITMAP_FLAG or Paint.ANTI_ALIAS_FLAG)
-    private val mColorPaint = Paint(Paint.ANTI_ALIAS_FLAG)
-
-    private val mPath = Path()
+    private val mVibrancyFilter =
+        ColorMatrixColorFilter(ColorMatrix().apply { setSaturation(1.25f) })
 
     private var mWallpaperWidth: Int = 0
     private var mDisplayHeight: Int = 0
     var wallpaperYOffset: Float = 0f
         private set
-    private val sCanvas = Canvas()
 
     private val mUpdateRunnable = Runnable { updateWallpaper() }
 
     private val wallpaperFilter = BlurWallpaperFilter(context)
-    private var applyTask: WallpaperFilter.ApplyTask? = null
+    private var updating = false
 
     private var updatePending = false
 
+    // Incremented for every update, work started for an older one is dropped
+    private val generation = AtomicInteger()
+
+    private var requestCount = 0
+    private var memoryHitCount = 0
+    private var diskHitCount = 0
+    private var blurCount = 0
+    private var droppedCount = 0
+    private var totalBlurTime = 0L
+    private var lastLatency = 0L
+
     init {
         isEnabled = getEnabledStatus()
 
@@ -80,12 +117,7 @@ class BlurWallpaperProvider(val context: Context) {
 
     private fun getEnabledStatus() = mWallpaperManager.wallpaperInfo == null && prefs.enableBlur
 
-    @SuppressLint("MissingPermission")
     private fun updateWallpaper() {
-        if (applyTask != null) {
-            updatePending = true
-            return
-        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1 && !context.hasStoragePermission) {
             prefs.enableBlur = false
             return
@@ -99,101 +131,204 @@ class BlurWallpaperProvider(val context: Context) {
         }
 
         if (!isEnabled) {
+            generation.incrementAndGet()
+            blurCache.evictAll()
             wallpaper = null
             placeholder = null
+            bufferPool.clear()
             return
         }
 
         wallpaperFilter.applyPrefs(prefs)
-
-        var wallpaper = try {
-            Utilities.drawableToBitmap(mWallpaperManager.drawable, true) as Bitmap
-        } catch (e: Exception) {
-            prefs.enableBlur = false
-            runOnMainThread {
-                val msg = "${context.getString(R.string.failed)}: ${e.message}"
-                Toast.makeText(context, msg, Toast.LENGTH_LONG).show()
-                notifyWallpaperChanged()
-            }
+        updateDisplayMetrics()
+
+        val displayWidth = mDisplayMetrics.widthPixels
+        val displayHeight = mDisplayMetrics.heightPixels
+        val radius = wallpaperFilter.blurRadius
+        val key = "${mWallpaperManager.getWallpaperId(WallpaperManager.FLAG_SYSTEM)}" +
+                "_${radius}_${DOWNSAMPLE_FACTOR}_${displayWidth}x$displayHeight"
+        val gen = generation.incrementAndGet()
+        requestCount++
+        blurCache.get(key)?.let {
+            memoryHitCount++
+            lastLatency = 0
+            applyBlurred(it)
             return
         }
-        wallpaper = scaleToScreenSize(wallpaper)
-        val wallpaperHeight = wallpaper.height
-        wallpaperYOffset = if (wallpaperHeight > mDisplayHeight) {
-            (wallpaperHeight - mDisplayHeight) * 0.5f
-        } else {
-            0f
+        if (updating) {
+            // The work in flight is stale now and stops at its next check, start over once
+            // it did with the latest params only
+            updatePending = true
+            return
         }
+        updating = true
+        val requestTime = SystemClock.uptimeMillis()
+        THREAD_POOL_EXECUTOR.execute {
+            loadBlurredWallpaper(gen, key, radius, requestTime, displayWidth, displayHeight)
+        }
+    }
 
-        mWallpaperWidth = wallpaper.width
+    private fun isCurrent(gen: Int) = gen == generation.get()
 
-        placeholder = createPlaceholder(wallpaper.width, wallpaper.height)
-        wallpaper = applyVibrancy(wallpaper)
+    /**
+     * Loads the blurred wallpaper from the disk cache, or downsamples the wallpaper, applies
+     * the vibrancy and blurs it, all on a single buffer of the downsampled size.
+     */
+    @SuppressLint("MissingPermission")
+    @WorkerThread
+    private fun loadBlurredWallpaper(
+        gen: Int,
+        key: String,
+        radius: Int,
+        requestTime: Long,
+        displayWidth: Int,
+        displayHeight: Int
+    ) {
+        diskCache.read(key, bufferPool)?.let {
+            runOnMainThread { onBlurDone(gen, key, it, null, requestTime, -1) }
+            return
+        }
+        if (!isCurrent(gen)) {
+            runOnMainThread { onBlurDone(gen, key, null, null, requestTime, -1) }
+            return
+        }
+
+        val downsampled = try {
+            drawDownsampled(mWallpaperManager.drawable, displayWidth, displayHeight)
+        } catch (e: Exception) {
+            runOnMainThread { onWallpaperLoadFailed(e) }
+            return
+        }
+        if (!isCurrent(gen)) {
+            bufferPool.release(downsampled.bitmap)
+            runOnMainThread { onBlurDone(gen, key, null, null, requestTime, -1) }
+            return
+        }
         Log.d("BWP", "starting blur")
 
-        applyTask = wallpaperFilter.apply(wallpaper).setCallback { result, error ->
-            if (error == null) {
-                this@BlurWallpaperProvider.wallpaper = result
-                Log.d("BWP", "blur done")
-                runOnMainThread(::notifyWallpaperChanged)
-                wallpaper.recycle()
-            } else {
-                if (error is OutOfMemoryError) {
-                    prefs.enableBlur = false
-                    runOnMainThread {
-                        Toast.makeText(context, R.string.failed, Toast.LENGTH_LONG).show()
-                        notifyWallpaperChanged()
-                    }
+        val buffer = downsampled.bitmap
+        val blurStart = SystemClock.uptimeMillis()
+        wallpaperFilter.apply(buffer, radius).setCallback { result, error ->
+            val blurTime = SystemClock.uptimeMillis() - blurStart
+            if (result !== buffer) {
+                bufferPool.release(buffer)
+            }
+            if (result == null) {
+                runOnMainThread { onBlurDone(gen, key, null, error, requestTime, blurTime) }
+                return@setCallback
+            }
+            val blurred = Blurred(result, downsampled.width, downsampled.height)
+            THREAD_POOL_EXECUTOR.execute {
+                if (isCurrent(gen)) {
+                    diskCache.write(key, blurred)
                 }
-                wallpaper.recycle()
+                runOnMainThread { onBlurDone(gen, key, blurred, null, requestTime, blurTime) }
             }
-            applyTask = null
-            if (updatePending) {
-                updatePending = false
-                updateWallpaper()
+        }
+    }
+
+    private fun drawDownsampled(
+        drawable: Drawable,
+        displayWidth: Int,
+        displayHeight: Int
+    ): Blurred {
+        val intrinsicWidth = drawable.intrinsicWidth.takeIf { it > 0 } ?: displayWidth
+        val intrinsicHeight = drawable.intrinsicHeight.takeIf { it > 0 } ?: displayHeight
+
+        // Scale the wallpaper so that it covers the whole screen
+        val scaleFactor = (displayWidth.toFloat() / intrinsicWidth)
+            .coerceAtLeast(displayHeight.toFloat() / intrinsicHeight)
+        val width = displayWidth.coerceAtLeast((intrinsicWidth * scaleFactor).ceilToInt())
+        val height = displayHeight.coerceAtLeast((intrinsicHeight * scaleFactor).ceilToInt())
+
+        val bitmap = bufferPool.obtain(
+            (width.toFloat() / DOWNSAMPLE_FACTOR).ceilToInt(),
+            (height.toFloat() / DOWNSAMPLE_FACTOR).ceilToInt()
+        )
+        val canvas = Canvas(bitmap)
+        canvas.scale(1f / DOWNSAMPLE_FACTOR, 1f / DOWNSAMPLE_FACTOR)
+        drawable.setBounds(0, 0, width, height)
+        drawable.colorFilter = mVibrancyFilter
+        drawable.draw(canvas)
+        canvas.setBitmap(null)
+        return Blurred(bitmap, width, height)
+    }
+
+    private fun onWallpaperLoadFailed(e: Exception) {
+        updating = false
+        prefs.enableBlur = false
+        val msg = "${context.getString(R.string.failed)}: ${e.message}"
+        Toast.makeText(context, msg, Toast.LENGTH_LONG).show()
+        notifyWallpaperChanged()
+    }
+
+    private fun onBlurDone(
+        gen: Int,
+        key: String,
+        blurred: Blurred?,
+        error: Throwable?,
+        requestTime: Long,
+        blurTime: Long // -1 if nothing was blurred
+    ) {
+        updating = false
+        if (blurTime >= 0) {
+            blurCount++
+            totalBlurTime += blurTime
+        } else if (blurred != null) {
+            diskHitCount++
+        }
+        if (!isCurrent(gen)) {
+            droppedCount++
+        }
+        if (blurred != null && !isEnabled) {
+            bufferPool.release(blurred.bitmap)
+        } else if (blurred != null) {
+            // Still valid for its own params even if they are not the latest ones
+            blurCache.put(key, blurred)
+            if (isCurrent(gen)) {
+                lastLatency = SystemClock.uptimeMillis() - requestTime
+                applyBlurred(blurred)
+                Log.d("BWP", "blur done")
             }
+        } else if (error is OutOfMemoryError) {
+            prefs.enableBlur = false
+            Toast.makeText(context, R.string.failed, Toast.LENGTH_LONG).show()
+            notifyWallpaperChanged()
+        }
+        if (updatePending) {
+            updatePending = false
+            updateWallpaper()
         }
     }
 
+    private fun applyBlurred(blurred: Blurred) {
+        wallpaperYOffset = if (blurred.height > mDisplayHeight) {
+            (blurred.height - mDisplayHeight) * 0.5f
+        } else {
+            0f
+        }
+        mWallpaperWidth = blurred.width
+        placeholder = createPlaceholder(blurred.bitmap.width, blurred.bitmap.height)
+        blurred.published = true
+        wallpaper = blurred.bitmap
+        notifyWallpaperChanged()
+    }
+
     private fun notifyWallpaperChanged() {
         mListeners.forEach(Listener::onWallpaperChanged)
     }
 
-    private fun scaleToScreenSize(bitmap: Bitmap): Bitmap {
+    private fun updateDisplayMetrics() {
         val wm = context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
         val display = wm.defaultDisplay
         display?.getRealMetrics(mDisplayMetrics)
-
-        val width = mDisplayMetrics.widthPixels
-        val height = mDisplayMetrics.heightPixels
-        mDisplayHeight = height
-
-        val widthFactor = width.toFloat() / bitmap.width
-        val heightFactor = height.toFloat() / bitmap.height
-
-        val upscaleFactor = widthFactor.coerceAtLeast(heightFactor)
-        if (upscaleFactor <= 0) {
-            return bitmap
-        }
-
-        val scaledWidth = width.coerceAtLeast((bitmap.width * upscaleFactor).ceilToInt())
-        val scaledHeight = height.coerceAtLeast((bitmap.height * upscaleFactor).ceilToInt())
-        return Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, false)
+        mDisplayHeight = mDisplayMetrics.heightPixels
     }
 
     private fun createPlaceholder(width: Int, height: Int): Bitmap {
-        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-        sCanvas.setBitmap(bitmap)
-
-        mPath.moveTo(0f, 0f)
-        mPath.lineTo(0f, height.toFloat())
-        mPath.lineTo(width.toFloat(), height.toFloat())
-        mPath.lineTo(width.toFloat(), 0f)
-        mColorPaint.xfermode = null
-        mColorPaint.color = tintColor
-        sCanvas.drawPath(mPath, mColorPaint)
-
-        return bitmap
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888).apply {
+            eraseColor(tintColor)
+        }
     }
 
     val tintColor: Int
@@ -201,26 +336,22 @@ class BlurWallpaperProvider(val context: Context) {
 //        get() = Utilities.resolveAttributeData(context, R.attr.blurTintColor)
 
     fun updateAsync() {
-        MAIN_EXECUTOR.execute(mUpdateRunnable)
+        // Rapid changes, like dragging the blur radius slider, only need the latest params
+        MAIN_EXECUTOR.handler.removeCallbacks(mUpdateRunnable)
+        MAIN_EXECUTOR.handler.post(mUpdateRunnable)
     }
 
-    private fun applyVibrancy(wallpaper: Bitmap): Bitmap {
-        val width = wallpaper.width
-        val height = wallpaper.height
-
-        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-        val canvas = Canvas()
-        canvas.setBitmap(bitmap)
-
-        val colorMatrix = ColorMatrix()
-        colorMatrix.setSaturation(1.25f)
-        val filter = ColorMatrixColorFilter(colorMatrix)
-        mVibrancyPaint.colorFilter = filter
-        canvas.drawBitmap(wallpaper, 0f, 0f, mVibrancyPaint)
-
-        wallpaper.recycle()
-
-        return bitmap
+    /**
+     * $ adb shell dumpsys activity com.saggitt.omega.OmegaLauncher
+     */
+    fun dump(prefix: String, writer: PrintWriter) {
+        writer.println(prefix + "BlurWallpaperProvider:")
+        writer.println(prefix + "\tenabled=" + isEnabled + " requests=" + requestCount +
+                " memoryHits=" + memoryHitCount + " diskHits=" + diskHitCount +
+                " blurs=" + blurCount + " dropped=" + droppedCount)
+        val averageBlurTime = if (blurCount > 0) totalBlurTime / blurCount else 0
+        writer.println(prefix + "\tavgBlurMs=" + averageBlurTime + " lastLatencyMs=" + lastLatency +
+                " cachedEntries=" + blurCache.snapshot().size + " cachedBytes=" + blurCache.size())
     }
 
     fun addListener(listener: Listener) {
@@ -266,6 +397,11 @@ class BlurWallpaperProvider(val context: Context) {
         }
     }
 
+    class Blurred(val bitmap: Bitmap, val width: Int, val height: Int) {
+        // Set once the bitmap was handed to the listeners, it must not go back to the pool
+        var published = false
+    }
+
     interface Listener {
 
         fun onWallpaperChanged() {}
@@ -277,6 +413,8 @@ class BlurWallpaperProvider(val context: Context) {
     companion object :
         SingletonHolder<BlurWallpaperProvider, Context>(ensureOnMainThread(useApplicationContext(::BlurWallpaperProvider))) {
         const val DOWNSAMPLE_FACTOR = 8
+        private const val BUFFER_POOL_SIZE = 2
+        private const val BLUR_CACHE_SIZE = 2 * 1024 * 1024
 
         var isEnabled: Boolean = false
         private var sEnabledFlag: Int = 0
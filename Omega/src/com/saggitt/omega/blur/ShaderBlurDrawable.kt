@@ -31,8 +31,14 @@ class ShaderBlurDrawable internal constructor(
         set(value) {
             if (field != value) {
                 field = value
-                blurPaint.shader =
-                    value?.let { BitmapShader(it, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP) }
+                blurPaint.shader = value?.let {
+                    BitmapShader(it, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP).apply {
+                        // The blurred wallpaper is kept downsampled
+                        setLocalMatrix(Matrix().apply {
+                            setScale(blurProvider.blurScale, blurProvider.blurScale)
+                        })
+                    }
+                }
             }
         }
     private var blurOffset = 0f
@@ -6,19 +6,23 @@ import android.content.pm.PackageManager
 import android.content.res.Resources
 import android.content.res.XmlResourceParser
 import android.graphics.drawable.Drawable
+import android.util.Log
 import android.util.Xml
+import androidx.core.content.pm.PackageInfoCompat
 import com.saggitt.omega.icons.ClockMetadata
 import kotlinx.coroutines.*
 import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
 import org.xmlpull.v1.XmlPullParserFactory
 import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Semaphore
 
 class IconPack(
     private val context: Context,
     private val packPackageName: String,
-    private val packResources: Resources
+    private val packResources: Resources,
+    private val onLoaded: ((IconPack) -> Unit)? = null
 ) {
     private var waiter: Semaphore? = Semaphore(0)
     private val deferredLoad: Deferred<Unit>
@@ -28,13 +32,37 @@ class IconPack(
     private val clockMap = mutableMapOf<ComponentName, IconEntry>()
     private val clockMetas = mutableMapOf<IconEntry, ClockMetadata>()
 
-    private val idCache = mutableMapOf<String, Int>()
+    private val idCache = ConcurrentHashMap<String, Int>()
+
+    @Volatile
+    private var cache: IconPackCache? = null
 
     init {
         deferredLoad = scope.async(Dispatchers.IO) {
-            loadInternal()
+            val packageInfo = try {
+                context.packageManager.getPackageInfo(packPackageName, 0)
+            } catch (e: PackageManager.NameNotFoundException) {
+                null
+            }
+            val versionCode = packageInfo?.let { PackageInfoCompat.getLongVersionCode(it) } ?: 0L
+            val lastUpdateTime = packageInfo?.lastUpdateTime ?: 0L
+            val cache = packageInfo?.let {
+                IconPackCache.open(context, packPackageName, versionCode, lastUpdateTime)
+            }
+            var parsed = false
+            if (cache != null) {
+                loadFromCache(cache)
+                this@IconPack.cache = cache
+            } else {
+                parsed = loadInternal()
+            }
             waiter?.release()
             waiter = null
+            // Never persist a partial parse, it would be served until the pack is updated
+            if (parsed && packageInfo != null) {
+                writeCache(versionCode, lastUpdateTime)
+            }
+            onLoaded?.invoke(this@IconPack)
         }
     }
 
@@ -49,7 +77,24 @@ class IconPack(
         }
     }
 
-    fun getIcon(componentName: ComponentName) = componentMap[componentName]
+    fun getIcon(componentName: ComponentName): IconEntry? {
+        val cache = this.cache ?: return componentMap[componentName]
+        return cache.getComponent(componentName)?.let { toIconEntry(it) }
+    }
+
+    /**
+     * Number of entries held on the heap, used to weigh this pack in [IconPackProvider].
+     * Components served from the memory-mapped cache are not counted.
+     */
+    val entryCount
+        get() = componentMap.size + calendarMap.size + clockMap.size + clockMetas.size +
+                idCache.size
+
+    /**
+     * Size in bytes of the memory-mapped cache, or 0 if the pack was parsed from its XML.
+     */
+    val mappedSize get() = cache?.size ?: 0
+
     fun getCalendar(componentName: ComponentName) = calendarMap[componentName]
     fun getClock(entry: IconEntry) = clockMetas[entry]
 
@@ -66,9 +111,75 @@ class IconPack(
         packResources.getIdentifier(name, "drawable", packPackageName)
     }
 
+    private fun toIconEntry(drawable: IconPackCache.CachedDrawable): IconEntry {
+        // Resource ids are stable for a given version of the pack, skip getIdentifier.
+        // Ids that were not resolved when the cache was written are looked up on first use.
+        if (drawable.resId != 0) {
+            idCache.putIfAbsent(drawable.name, drawable.resId)
+        }
+        return IconEntry(this, drawable.name)
+    }
+
+    /**
+     * Returns the id already resolved for [name], or 0 so that it is resolved lazily once the
+     * cache is read back. Avoids a getIdentifier call for every entry of the pack.
+     */
+    private fun getCachedDrawableId(name: String) = idCache[name] ?: 0
+
+    private fun loadFromCache(cache: IconPackCache) {
+        cache.readCalendars().forEach { (componentName, prefix) ->
+            calendarMap[componentName] = CalendarIconEntry(this, prefix)
+        }
+        cache.readClocks().forEach { clock ->
+            val entry = toIconEntry(clock.drawable)
+            clockMetas[entry] = clock.metadata
+            if (clock.componentName != null) {
+                clockMap[clock.componentName] = entry
+            }
+        }
+    }
+
+    private fun writeCache(versionCode: Long, lastUpdateTime: Long) {
+        val builder = IconPackCache.Builder()
+        componentMap.forEach { (componentName, entry) ->
+            builder.addComponent(
+                componentName,
+                IconPackCache.CachedDrawable(entry.name, getCachedDrawableId(entry.name))
+            )
+        }
+        calendarMap.forEach { (componentName, entry) ->
+            builder.addCalendar(componentName, entry.prefix)
+        }
+        clockMap.forEach { (componentName, entry) ->
+            builder.addClock(
+                componentName,
+                IconPackCache.CachedDrawable(entry.name, getCachedDrawableId(entry.name)),
+                clockMetas[entry]!!
+            )
+        }
+        val themedClocks = clockMap.values.toSet()
+        clockMetas.filterKeys { it !in themedClocks }.forEach { (entry, metadata) ->
+            builder.addClock(
+                null,
+                IconPackCache.CachedDrawable(entry.name, getCachedDrawableId(entry.name)),
+                metadata
+            )
+        }
+        try {
+            builder.write(
+                IconPackCache.getCacheFile(context, packPackageName), versionCode, lastUpdateTime
+            )
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to write cache for $packPackageName", e)
+        }
+    }
+
+    /**
+     * Parses the appfilter of the pack, returns false if it could not be read completely.
+     */
     @Suppress("BlockingMethodInNonBlockingContext")
-    private fun loadInternal() {
-        val parseXml = getXml("appfilter") ?: return
+    private fun loadInternal(): Boolean {
+        val parseXml = getXml("appfilter") ?: return false
         val compStart = "ComponentInfo{"
         val compStartLength = compStart.length
         val compEnd = "}"
@@ -124,15 +235,17 @@ class IconPack(
                     clockMap[componentName] = iconEntry
                 }
             }
+            return true
         } catch (e: PackageManager.NameNotFoundException) {
-            e.printStackTrace()
+            Log.e(TAG, "Failed to parse appfilter of $packPackageName", e)
         } catch (e: XmlPullParserException) {
-            e.printStackTrace()
+            Log.e(TAG, "Failed to parse appfilter of $packPackageName", e)
         } catch (e: IOException) {
-            e.printStackTrace()
+            Log.e(TAG, "Failed to parse appfilter of $packPackageName", e)
         } catch (e: IllegalStateException) {
-            e.printStackTrace()
+            Log.e(TAG, "Failed to parse appfilter of $packPackageName", e)
         }
+        return false
     }
 
     private fun getXml(name: String): XmlPullParser? {
@@ -156,6 +269,7 @@ class IconPack(
     }
 
     companion object {
+        private const val TAG = "IconPack"
         private val scope = CoroutineScope(Dispatchers.IO) + CoroutineName("IconPack")
     }
 }
@@ -0,0 +1,357 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.iconpack
+
+import android.content.ComponentName
+import android.content.Context
+import android.util.Log
+import com.saggitt.omega.icons.ClockMetadata
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Parsed appfilter of an icon pack, stored in a versioned binary file which is memory-mapped
+ * on the next start. Component lookups binary search the mapped table, so the full component
+ * map never has to be built. Calendars and clocks are few and are read eagerly.
+ *
+ * Layout, all offsets in bytes from the start of the file:
+ * - header: magic, format version, pack version code, pack update time and section offsets
+ * - components: sorted by hash of the flattened component, (hash, key, drawable, resource id)
+ * - calendars: (key, prefix)
+ * - clocks: (key, drawable, resource id, six clock metadata ints)
+ * - strings: length prefixed UTF-8, referenced by their offset from the start of the section
+ */
+class IconPackCache private constructor(private val buffer: ByteBuffer) {
+
+    private val componentCount = buffer.getInt(OFFSET_COMPONENT_COUNT)
+    private val componentOffset = buffer.getInt(OFFSET_COMPONENT_TABLE)
+    private val stringsOffset = buffer.getInt(OFFSET_STRINGS)
+
+    val size get() = buffer.capacity()
+
+    /**
+     * Returns the drawable of [componentName], or null if the pack doesn't theme it.
+     */
+    fun getComponent(componentName: ComponentName): CachedDrawable? {
+        val key = componentName.flattenToString()
+        val hash = key.hashCode()
+        var low = 0
+        var high = componentCount - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val midHash = buffer.getInt(componentOffset + mid * COMPONENT_ENTRY_SIZE)
+            when {
+                midHash < hash -> low = mid + 1
+                midHash > hash -> high = mid - 1
+                else -> {
+                    // Walk back to the first entry with this hash, then check each collision
+                    var i = mid
+                    while (i > 0 && buffer.getInt(entryOffset(i - 1)) == hash) i--
+                    while (i < componentCount && buffer.getInt(entryOffset(i)) == hash) {
+                        val entry = entryOffset(i)
+                        if (readString(buffer.getInt(entry + 4)) == key) {
+                            return CachedDrawable(
+                                readString(buffer.getInt(entry + 8)),
+                                buffer.getInt(entry + 12)
+                            )
+                        }
+                        i++
+                    }
+                    return null
+                }
+            }
+        }
+        return null
+    }
+
+    fun readCalendars(): Map<ComponentName, String> {
+        val count = buffer.getInt(OFFSET_CALENDAR_COUNT)
+        val offset = buffer.getInt(OFFSET_CALENDAR_TABLE)
+        val calendars = HashMap<ComponentName, String>(count)
+        for (i in 0 until count) {
+            val entry = offset + i * CALENDAR_ENTRY_SIZE
+            val componentName = ComponentName.unflattenFromString(
+                readString(buffer.getInt(entry))
+            ) ?: continue
+            calendars[componentName] = readString(buffer.getInt(entry + 4))
+        }
+        return calendars
+    }
+
+    fun readClocks(): List<CachedClock> {
+        val count = buffer.getInt(OFFSET_CLOCK_COUNT)
+        val offset = buffer.getInt(OFFSET_CLOCK_TABLE)
+        val clocks = ArrayList<CachedClock>(count)
+        for (i in 0 until count) {
+            val entry = offset + i * CLOCK_ENTRY_SIZE
+            val componentName = buffer.getInt(entry).let {
+                if (it < 0) null else ComponentName.unflattenFromString(readString(it))
+            }
+            clocks.add(
+                CachedClock(
+                    componentName,
+                    CachedDrawable(readString(buffer.getInt(entry + 4)), buffer.getInt(entry + 8)),
+                    ClockMetadata(
+                        buffer.getInt(entry + 12), buffer.getInt(entry + 16),
+                        buffer.getInt(entry + 20), buffer.getInt(entry + 24),
+                        buffer.getInt(entry + 28), buffer.getInt(entry + 32)
+                    )
+                )
+            )
+        }
+        return clocks
+    }
+
+    private fun entryOffset(index: Int) = componentOffset + index * COMPONENT_ENTRY_SIZE
+
+    private fun readString(offset: Int): String {
+        val start = stringsOffset + offset
+        val length = buffer.getShort(start).toInt() and 0xFFFF
+        val bytes = ByteArray(length)
+        // Absolute bulk reads need API 33, read through a duplicate to keep this thread safe
+        val view = buffer.duplicate()
+        view.position(start + 2)
+        view.get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    data class CachedDrawable(val name: String, val resId: Int)
+
+    data class CachedClock(
+        val componentName: ComponentName?,
+        val drawable: CachedDrawable,
+        val metadata: ClockMetadata
+    )
+
+    /**
+     * Collects a parsed appfilter and writes it in the cache format.
+     */
+    class Builder {
+        private val components = ArrayList<Pair<String, CachedDrawable>>()
+        private val calendars = ArrayList<Pair<String, String>>()
+        private val clocks = ArrayList<Triple<String?, CachedDrawable, ClockMetadata>>()
+
+        fun addComponent(componentName: ComponentName, drawable: CachedDrawable) = apply {
+            components.add(componentName.flattenToString() to drawable)
+        }
+
+        fun addCalendar(componentName: ComponentName, prefix: String) = apply {
+            calendars.add(componentName.flattenToString() to prefix)
+        }
+
+        fun addClock(
+            componentName: ComponentName?, drawable: CachedDrawable, metadata: ClockMetadata
+        ) = apply {
+            clocks.add(Triple(componentName?.flattenToString(), drawable, metadata))
+        }
+
+        fun write(file: File, versionCode: Long, lastUpdateTime: Long) {
+            val strings = ByteArrayOutputStream()
+            val stringsOut = DataOutputStream(strings)
+            val stringOffsets = HashMap<String, Int>()
+            fun stringOffset(value: String): Int = stringOffsets.getOrPut(value) {
+                val offset = strings.size()
+                val bytes = value.toByteArray(Charsets.UTF_8)
+                stringsOut.writeShort(bytes.size)
+                stringsOut.write(bytes)
+                offset
+            }
+
+            val sortedComponents = components.sortedBy { it.first.hashCode() }
+            val componentTable = OFFSET_STRINGS + 4
+            val calendarTable = componentTable + sortedComponents.size * COMPONENT_ENTRY_SIZE
+            val clockTable = calendarTable + calendars.size * CALENDAR_ENTRY_SIZE
+            val stringsStart = clockTable + clocks.size * CLOCK_ENTRY_SIZE
+
+            val tables = ByteArrayOutputStream(stringsStart)
+            val out = DataOutputStream(tables)
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            out.writeLong(versionCode)
+            out.writeLong(lastUpdateTime)
+            out.writeInt(sortedComponents.size)
+            out.writeInt(componentTable)
+            out.writeInt(calendars.size)
+            out.writeInt(calendarTable)
+            out.writeInt(clocks.size)
+            out.writeInt(clockTable)
+            out.writeInt(stringsStart)
+            sortedComponents.forEach { (key, drawable) ->
+                out.writeInt(key.hashCode())
+                out.writeInt(stringOffset(key))
+                out.writeInt(stringOffset(drawable.name))
+                out.writeInt(drawable.resId)
+            }
+            calendars.forEach { (key, prefix) ->
+                out.writeInt(stringOffset(key))
+                out.writeInt(stringOffset(prefix))
+            }
+            clocks.forEach { (key, drawable, meta) ->
+                out.writeInt(if (key != null) stringOffset(key) else -1)
+                out.writeInt(stringOffset(drawable.name))
+                out.writeInt(drawable.resId)
+                out.writeInt(meta.hourLayerIndex)
+                out.writeInt(meta.minuteLayerIndex)
+                out.writeInt(meta.secondLayerIndex)
+                out.writeInt(meta.defaultHour)
+                out.writeInt(meta.defaultMinute)
+                out.writeInt(meta.defaultSecond)
+            }
+            out.flush()
+            stringsOut.flush()
+
+            // Write to a temporary file first so a crash never leaves a truncated cache behind.
+            // Each build gets its own file, as several packs can be cached at the same time.
+            val dir = file.parentFile!!
+            dir.mkdirs()
+            val tmpFile = File.createTempFile(file.name, ".tmp", dir)
+            try {
+                FileOutputStream(tmpFile).use {
+                    tables.writeTo(it)
+                    strings.writeTo(it)
+                    it.fd.sync()
+                }
+                if (!tmpFile.renameTo(file)) {
+                    throw IOException("Unable to move icon pack cache to $file")
+                }
+            } finally {
+                tmpFile.delete()
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "IconPackCache"
+
+        private const val MAGIC = 0x4f495043 // OIPC
+        private const val FORMAT_VERSION = 1
+
+        private const val OFFSET_VERSION_CODE = 8
+        private const val OFFSET_UPDATE_TIME = 16
+        private const val OFFSET_COMPONENT_COUNT = 24
+        private const val OFFSET_COMPONENT_TABLE = 28
+        private const val OFFSET_CALENDAR_COUNT = 32
+        private const val OFFSET_CALENDAR_TABLE = 36
+        private const val OFFSET_CLOCK_COUNT = 40
+        private const val OFFSET_CLOCK_TABLE = 44
+        private const val OFFSET_STRINGS = 48
+
+        private const val COMPONENT_ENTRY_SIZE = 16
+        private const val CALENDAR_ENTRY_SIZE = 8
+        private const val CLOCK_ENTRY_SIZE = 36
+
+        @JvmStatic
+        fun getCacheFile(context: Context, packageName: String) =
+            File(File(context.cacheDir, "icon_packs"), "$packageName.bin")
+
+        /**
+         * Maps the cache of [packageName], or returns null if it is missing, corrupt or was
+         * written for another version of the pack.
+         */
+        @JvmStatic
+        fun open(
+            context: Context, packageName: String, versionCode: Long, lastUpdateTime: Long
+        ): IconPackCache? {
+            val file = getCacheFile(context, packageName)
+            if (!file.exists()) return null
+            return try {
+                RandomAccessFile(file, "r").use { raf ->
+                    val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                    if (raf.length() < OFFSET_STRINGS + 4
+                        || buffer.getInt(0) != MAGIC
+                        || buffer.getInt(4) != FORMAT_VERSION
+                        || buffer.getLong(OFFSET_VERSION_CODE) != versionCode
+                        || buffer.getLong(OFFSET_UPDATE_TIME) != lastUpdateTime
+                        || !isValid(buffer)
+                    ) {
+                        file.delete()
+                        null
+                    } else {
+                        IconPackCache(buffer)
+                    }
+                }
+            } catch (e: IOException) {
+                Log.e(TAG, "Unable to read icon pack cache for $packageName", e)
+                file.delete()
+                null
+            }
+        }
+
+        /**
+         * Checks that every table and string referenced from the header fits in [buffer], so
+         * that a truncated or corrupt cache is rebuilt instead of failing the icon lookups.
+         */
+        private fun isValid(buffer: ByteBuffer): Boolean {
+            val limit = buffer.limit()
+            val tablesStart = OFFSET_STRINGS + 4
+            val stringsStart = buffer.getInt(OFFSET_STRINGS)
+            if (stringsStart < tablesStart || stringsStart > limit) return false
+
+            fun tableOffset(countOffset: Int, tableOffset: Int, entrySize: Int): Int {
+                val count = buffer.getInt(countOffset)
+                val start = buffer.getInt(tableOffset)
+                return if (count < 0 || start < tablesStart
+                    || start.toLong() + count.toLong() * entrySize > stringsStart
+                ) -1 else start
+            }
+
+            fun isStringValid(offset: Int): Boolean {
+                if (offset < 0) return false
+                val start = stringsStart.toLong() + offset
+                if (start + 2 > limit) return false
+                val length = buffer.getShort(start.toInt()).toInt() and 0xFFFF
+                return start + 2 + length <= limit
+            }
+
+            val components =
+                tableOffset(OFFSET_COMPONENT_COUNT, OFFSET_COMPONENT_TABLE, COMPONENT_ENTRY_SIZE)
+            val calendars =
+                tableOffset(OFFSET_CALENDAR_COUNT, OFFSET_CALENDAR_TABLE, CALENDAR_ENTRY_SIZE)
+            val clocks = tableOffset(OFFSET_CLOCK_COUNT, OFFSET_CLOCK_TABLE, CLOCK_ENTRY_SIZE)
+            if (components < 0 || calendars < 0 || clocks < 0) return false
+
+            for (i in 0 until buffer.getInt(OFFSET_COMPONENT_COUNT)) {
+                val entry = components + i * COMPONENT_ENTRY_SIZE
+                if (!isStringValid(buffer.getInt(entry + 4))
+                    || !isStringValid(buffer.getInt(entry + 8))
+                ) return false
+            }
+            for (i in 0 until buffer.getInt(OFFSET_CALENDAR_COUNT)) {
+                val entry = calendars + i * CALENDAR_ENTRY_SIZE
+                if (!isStringValid(buffer.getInt(entry))
+                    || !isStringValid(buffer.getInt(entry + 4))
+                ) return false
+            }
+            for (i in 0 until buffer.getInt(OFFSET_CLOCK_COUNT)) {
+                val entry = clocks + i * CLOCK_ENTRY_SIZE
+                val key = buffer.getInt(entry)
+                if ((key != -1 && !isStringValid(key))
+                    || !isStringValid(buffer.getInt(entry + 4))
+                ) return false
+            }
+            return true
+        }
+    }
+}
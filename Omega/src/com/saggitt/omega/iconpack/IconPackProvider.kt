@@ -1,28 +1,100 @@
 package com.saggitt.omega.iconpack
 
+import android.app.ActivityManager
+import android.content.ComponentCallbacks2
 import android.content.Context
 import android.content.pm.PackageManager
 import android.graphics.drawable.Drawable
 import androidx.core.content.ContextCompat
 import com.android.launcher3.R
+import com.android.launcher3.Utilities
 import com.android.launcher3.util.MainThreadInitializedObject
 import com.saggitt.omega.icons.CustomAdaptiveIconDrawable
 import com.saggitt.omega.util.Config
+import java.io.PrintWriter
 
+/**
+ * Keeps the loaded icon packs. The packs are weighed by the entries they hold on the heap plus
+ * their memory-mapped cache, and the least recently used ones are dropped once the total goes
+ * over a budget derived from the heap size. The packs are weighed again once they finish
+ * loading, as they are still empty when added. The active pack is never dropped.
+ */
 class IconPackProvider(private val context: Context) {
-    private val iconPacks = mutableMapOf<String, IconPack?>()
+    private val prefs = Utilities.getOmegaPrefs(context)
 
+    // Access ordered, the first entry is the least recently used pack
+    private val iconPacks = LinkedHashMap<String, IconPack?>(4, 0.75f, true)
+    private val maxBytes = context.getSystemService(ActivityManager::class.java)
+        .memoryClass.toLong() * BYTES_PER_MB / HEAP_FRACTION
+
+    @Synchronized
     fun getIconPack(packageName: String): IconPack? {
         if (packageName == "") {
             return null
         }
-        return iconPacks.getOrPut(packageName) {
-            try {
-                val packResources = context.packageManager.getResourcesForApplication(packageName)
-                IconPack(context, packageName, packResources)
-            } catch (e: PackageManager.NameNotFoundException) {
-                null
-            }
+        iconPacks[packageName]?.let { return it }
+        val iconPack = try {
+            val packResources = context.packageManager.getResourcesForApplication(packageName)
+            IconPack(context, packageName, packResources) { onIconPackLoaded() }
+        } catch (e: PackageManager.NameNotFoundException) {
+            null
+        }
+        iconPacks[packageName] = iconPack
+        trimToSize(maxBytes)
+        return iconPack
+    }
+
+    @Synchronized
+    private fun onIconPackLoaded() {
+        trimToSize(maxBytes)
+    }
+
+    /**
+     * Drops every pack but the active one when the launcher goes to the background.
+     */
+    @Synchronized
+    fun onTrimMemory(level: Int) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimToSize(0)
+        }
+    }
+
+    /**
+     * Drops the least recently used packs until the total weight fits [maxBytes]. Unless every
+     * pack is dropped, the most recently used one is kept so that it isn't parsed again on the
+     * next lookup.
+     */
+    private fun trimToSize(maxBytes: Long) {
+        val active = prefs.iconPackPackage
+        val mostRecent = if (maxBytes > 0) iconPacks.keys.lastOrNull() else null
+        var size = iconPacks.values.sumOf { weigh(it) }
+        val iterator = iconPacks.entries.iterator()
+        while (iterator.hasNext() && (size > maxBytes || maxBytes == 0L)) {
+            val (packageName, iconPack) = iterator.next()
+            if (packageName == active || packageName == mostRecent) continue
+            size -= weigh(iconPack)
+            iterator.remove()
+        }
+    }
+
+    private fun weigh(iconPack: IconPack?): Long =
+        if (iconPack == null) 0L else iconPack.entryCount * BYTES_PER_ENTRY + iconPack.mappedSize
+
+    /**
+     * $ adb shell dumpsys activity com.saggitt.omega.OmegaLauncher
+     */
+    @Synchronized
+    fun dump(prefix: String, writer: PrintWriter) {
+        val active = prefs.iconPackPackage
+        writer.println(prefix + "IconPackProvider:")
+        writer.println(prefix + "\tactive=" + active + " maxBytes=" + maxBytes +
+                " totalBytes=" + iconPacks.values.sumOf { weigh(it) })
+        iconPacks.forEach { (packageName, iconPack) ->
+            writer.println(prefix + "\t" + packageName +
+                    " bytes=" + weigh(iconPack) +
+                    " entries=" + (iconPack?.entryCount ?: 0) +
+                    " mappedBytes=" + (iconPack?.mappedSize ?: 0) +
+                    if (packageName == active) " (pinned)" else "")
         }
     }
 
@@ -50,6 +122,12 @@ class IconPackProvider(private val context: Context) {
     }
 
     companion object {
+        private const val BYTES_PER_MB = 1024L * 1024L
+        // Share of the heap the packs may use
+        private const val HEAP_FRACTION = 32
+        // Rough heap size of a pack entry (component, drawable name and resource id)
+        private const val BYTES_PER_ENTRY = 256L
+
         @JvmField
         val INSTANCE = MainThreadInitializedObject(::IconPackProvider)
     }
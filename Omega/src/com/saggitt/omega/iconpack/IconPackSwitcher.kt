@@ -0,0 +1,196 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.iconpack
+
+import android.content.Context
+import android.content.Intent
+import android.content.pm.LauncherApps
+import android.os.UserHandle
+import androidx.annotation.WorkerThread
+import com.android.launcher3.LauncherAppState
+import com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP
+import com.android.launcher3.LauncherSettings.Favorites.CONTAINER_HOTSEAT
+import com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPLICATION
+import com.android.launcher3.Utilities
+import com.android.launcher3.WorkspaceLayoutManager.FIRST_SCREEN_ID
+import com.android.launcher3.model.AllAppsList
+import com.android.launcher3.model.BaseModelUpdateTask
+import com.android.launcher3.model.BgDataModel
+import com.android.launcher3.model.CacheDataUpdatedTask
+import com.android.launcher3.model.data.ItemInfo
+import com.android.launcher3.model.data.WorkspaceItemInfo
+import com.android.launcher3.util.ComponentKey
+import com.android.launcher3.util.Executors.MODEL_EXECUTOR
+import com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR
+import com.android.launcher3.util.MainThreadInitializedObject
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Re-renders the app icons after the icon pack changes. Instead of reloading the whole model
+ * and rendering every icon on the model thread, rendering is spread across a bounded number
+ * of workers and icons are published as they become ready: the hotseat and the first
+ * workspace page first, then the rest of the workspace, then the app drawer. Once every icon
+ * is rendered, the widget previews are refreshed and the model is reloaded from the warm cache,
+ * so that the icons which are not app items (predictions, widget and shortcut icons) are updated
+ * too. Picking another pack while a switch is running drops the remaining work of the previous
+ * one.
+ */
+class IconPackSwitcher(private val context: Context) {
+
+    private val prefs = Utilities.getOmegaPrefs(context)
+    private val iconPackProvider = IconPackProvider.INSTANCE.get(context)
+    private val launcherApps = context.getSystemService(LauncherApps::class.java)
+
+    private val generation = AtomicInteger()
+
+    // Guards the icon cache writes against a newer switch clearing the cache
+    private val lock = Any()
+    private val pendingPackages = HashMap<UserHandle, HashSet<String>>()
+    private var publishScheduled = false
+
+    /**
+     * Called on the main thread once the icon pack preference has been updated.
+     */
+    fun onIconPackChanged() {
+        val gen = generation.incrementAndGet()
+        val app = LauncherAppState.getInstance(context)
+        MODEL_EXECUTOR.execute {
+            synchronized(lock) {
+                if (gen != generation.get()) return@execute
+                pendingPackages.clear()
+                app.iconCache.clearAllIcons()
+            }
+        }
+        app.model.enqueueModelUpdateTask(CollectTargetsTask(gen))
+    }
+
+    private fun isCurrent(gen: Int) = gen == generation.get()
+
+    @WorkerThread
+    private fun render(gen: Int, targets: List<ComponentKey>) {
+        val next = AtomicInteger()
+        val workers = minOf(PARALLELISM, targets.size)
+        if (workers == 0) {
+            MODEL_EXECUTOR.execute { finish(gen) }
+            return
+        }
+        val remainingWorkers = AtomicInteger(workers)
+        repeat(workers) {
+            THREAD_POOL_EXECUTOR.execute {
+                // The pack is parsed in the background, wait for it instead of
+                // rendering the fallback icons
+                iconPackProvider.getIconPack(prefs.iconPackPackage)?.loadBlocking()
+                while (isCurrent(gen)) {
+                    val index = next.getAndIncrement()
+                    if (index >= targets.size) break
+                    renderIcon(gen, targets[index])
+                }
+                if (remainingWorkers.decrementAndGet() == 0 && isCurrent(gen)) {
+                    MODEL_EXECUTOR.execute { finish(gen) }
+                }
+            }
+        }
+    }
+
+    /**
+     * Called on the model thread once all the app icons of [gen] are rendered.
+     */
+    private fun finish(gen: Int) {
+        synchronized(lock) {
+            if (gen != generation.get()) return
+            // The reload picks up the icons which were not published yet
+            pendingPackages.clear()
+        }
+        val app = LauncherAppState.getInstance(context)
+        app.widgetCache.refresh()
+        app.model.forceReload()
+    }
+
+    @WorkerThread
+    private fun renderIcon(gen: Int, key: ComponentKey) {
+        val intent = Intent(Intent.ACTION_MAIN).setComponent(key.componentName)
+        val info = launcherApps.resolveActivity(intent, key.user) ?: return
+        val iconCache = LauncherAppState.getInstance(context).iconCache
+        val bitmap = iconCache.renderIcon(info)
+        synchronized(lock) {
+            if (gen != generation.get()) return
+            iconCache.addRenderedIcon(info, bitmap)
+            pendingPackages.getOrPut(key.user) { HashSet() }.add(key.componentName.packageName)
+            if (!publishScheduled) {
+                publishScheduled = true
+                MODEL_EXECUTOR.handler.postDelayed(::publish, PUBLISH_DELAY)
+            }
+        }
+    }
+
+    private fun publish() {
+        val updates = synchronized(lock) {
+            publishScheduled = false
+            HashMap(pendingPackages).also { pendingPackages.clear() }
+        }
+        val model = LauncherAppState.getInstance(context).model
+        updates.forEach { (user, packages) ->
+            model.enqueueModelUpdateTask(
+                CacheDataUpdatedTask(CacheDataUpdatedTask.OP_CACHE_UPDATE, user, packages)
+            )
+        }
+    }
+
+    private inner class CollectTargetsTask(private val gen: Int) : BaseModelUpdateTask() {
+
+        override fun execute(app: LauncherAppState, dataModel: BgDataModel, apps: AllAppsList) {
+            if (!isCurrent(gen)) return
+            val visible = ArrayList<ComponentKey>()
+            val workspace = ArrayList<ComponentKey>()
+            val drawer = ArrayList<ComponentKey>()
+            val seen = HashSet<ComponentKey>()
+            synchronized(dataModel) {
+                for (item in dataModel.itemsIdMap) {
+                    if (item !is WorkspaceItemInfo || item.itemType != ITEM_TYPE_APPLICATION) {
+                        continue
+                    }
+                    val cn = item.targetComponent ?: continue
+                    val key = ComponentKey(cn, item.user)
+                    if (!seen.add(key)) continue
+                    if (isOnFirstPage(item, dataModel)) visible.add(key) else workspace.add(key)
+                }
+                for (info in apps.data) {
+                    val key = info.toComponentKey()
+                    if (seen.add(key)) drawer.add(key)
+                }
+            }
+            render(gen, visible + workspace + drawer)
+        }
+
+        private fun isOnFirstPage(item: ItemInfo, dataModel: BgDataModel): Boolean {
+            // Items inside a folder are shown wherever the folder is
+            val parent: ItemInfo = dataModel.folders[item.container] ?: item
+            return parent.container == CONTAINER_HOTSEAT
+                    || (parent.container == CONTAINER_DESKTOP && parent.screenId == FIRST_SCREEN_ID)
+        }
+    }
+
+    companion object {
+        private const val PUBLISH_DELAY = 100L
+        private val PARALLELISM = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(2, 4)
+
+        @JvmField
+        val INSTANCE = MainThreadInitializedObject(::IconPackSwitcher)
+    }
+}
@@ -29,9 +29,11 @@ import com.android.launcher3.util.MainThreadInitializedObject
 import com.android.launcher3.util.Themes
 import com.saggitt.omega.PREFS_ACCENT
 import com.saggitt.omega.PREFS_SORT
+import com.saggitt.omega.allapps.ComponentKeySets
 import com.saggitt.omega.icons.CustomAdaptiveIconDrawable
 import com.saggitt.omega.icons.IconShape
 import com.saggitt.omega.icons.IconShapeManager
+import com.saggitt.omega.iconpack.IconPackSwitcher
 import com.saggitt.omega.theme.ThemeManager
 import com.saggitt.omega.util.dpToPx
 import com.saggitt.omega.util.pxToDp
@@ -55,6 +57,9 @@ class OmegaPreferences(val context: Context) : SharedPreferences.OnSharedPrefere
     private val updateBlur = { updateBlur() }
     private val idp get() = InvariantDeviceProfile.INSTANCE.get(context)
     val reloadIcons = { idp.onPreferencesChanged(context) }
+    private val reloadHiddenApps = { reloadAppSet(ComponentKeySets.KEY_HIDDEN_APPS) }
+    private val reloadProtectedApps = { reloadAppSet(ComponentKeySets.KEY_PROTECTED_APPS) }
+    private val switchIconPack = { IconPackSwitcher.INSTANCE.get(context).onIconPackChanged() }
     private val onIconShapeChanged = {
         initializeIconShape()
         L3IconShape.init(context)
@@ -110,13 +115,13 @@ class OmegaPreferences(val context: Context) : SharedPreferences.OnSharedPrefere
 
     // DRAWER
     var sortMode by StringIntPref(PREFS_SORT, 0, restart)
-    var hiddenAppSet by StringSetPref("hidden_app_set", setOf(), reloadApps)
+    var hiddenAppSet by StringSetPref("hidden_app_set", setOf(), reloadHiddenApps)
     var hiddenPredictionAppSet by StringSetPref(
             "pref_hidden_prediction_set",
             setOf(),
             doNothing
     )
-    var protectedAppsSet by StringSetPref("protected_app_set", setOf(), reloadApps)
+    var protectedAppsSet by StringSetPref("protected_app_set", setOf(), reloadProtectedApps)
     var enableProtectedApps by BooleanPref("pref_protected_apps", false)
     var allAppsIconScale by FloatPref("pref_allapps_icon_scale", 1f, reloadApps)
     val allAppsTextScale by FloatPref("pref_allapps_icon_text_scale", 1f)
@@ -145,7 +150,7 @@ class OmegaPreferences(val context: Context) : SharedPreferences.OnSharedPrefere
     var blurRadius by IntPref("pref_blurRadius", 75, updateBlur)
     var customWindowCorner by BooleanPref("pref_customWindowCorner", false, doNothing)
     var windowCornerRadius by FloatPref("pref_customWindowCornerRadius", 8f, updateBlur)
-    var iconPackPackage by StringPref("pref_icon_pack_package", "", reloadIcons)
+    var iconPackPackage by StringPref("pref_icon_pack_package", "", switchIconPack)
 
     var iconShape by StringBasedPref(
             "pref_iconShape", IconShape.Circle, onIconShapeChanged,
@@ -232,6 +237,12 @@ class OmegaPreferences(val context: Context) : SharedPreferences.OnSharedPrefere
         onChangeCallback?.reloadApps()
     }
 
+    private fun reloadAppSet(key: String) {
+        // The model filters the apps with these sets, update them before reloading
+        ComponentKeySets.INSTANCE.get(context).onValueChanged(key, this)
+        reloadApps()
+    }
+
     private fun reloadAll() {
         onChangeCallback?.reloadAll()
     }
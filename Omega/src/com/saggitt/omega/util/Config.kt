@@ -32,11 +32,11 @@ import android.text.TextUtils
 import android.widget.Toast
 import androidx.annotation.RequiresApi
 import com.android.launcher3.R
-import com.android.launcher3.Utilities
 import com.android.launcher3.model.data.AppInfo
 import com.android.launcher3.util.ComponentKey
 import com.android.launcher3.util.Executors.MAIN_EXECUTOR
 import com.android.launcher3.util.PackageManagerHelper
+import com.saggitt.omega.allapps.ComponentKeySets
 import com.saggitt.omega.allapps.CustomAppFilter
 import java.util.*
 
@@ -74,6 +74,7 @@ class Config(val context: Context) {
         const val SORT_ZA = 1
         const val SORT_MOST_USED = 2
         const val SORT_BY_COLOR = 3
+        const val SORT_MOST_USED_RECENT = 4
 
         val ICON_INTENTS = arrayOf(
             Intent("com.novalauncher.THEME"),
@@ -146,15 +147,7 @@ class Config(val context: Context) {
             Check is the app is protected
         */
         fun isAppProtected(context: Context, componentKey: ComponentKey): Boolean {
-            var result = false
-            val protectedApps = ArrayList(
-                    Utilities.getOmegaPrefs(context).protectedAppsSet
-                            .map { Utilities.makeComponentKey(context, it) })
-
-            if (protectedApps.contains(componentKey)) {
-                result = true
-            }
-            return result
+            return ComponentKeySets.INSTANCE.get(context).isProtected(componentKey)
         }
 
         private val PLACE_HOLDERS = arrayOf(
@@ -18,29 +18,61 @@
 
 package com.saggitt.omega.util
 
-import android.content.ContentValues
 import android.content.Context
 import android.database.Cursor
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
 import com.android.launcher3.LauncherFiles
+import com.android.launcher3.Utilities
 import com.saggitt.omega.allapps.AppCountInfo
+import com.saggitt.omega.allapps.UsageHistogram
 
 class DbHelper(c: Context?) :
-    SQLiteOpenHelper(c, DATABASE_HOME, null, 1) {
+    SQLiteOpenHelper(c, DATABASE_HOME, null, DATABASE_VERSION) {
     private val db: SQLiteDatabase = writableDatabase
     override fun onCreate(db: SQLiteDatabase) {
         db.execSQL(SQL_CREATE_COUNT)
+        db.execSQL(SQL_CREATE_USAGE)
     }
 
     override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        // discard the data and start over
-        db.execSQL(SQL_DELETE + TABLE_APP_COUNT)
-        onCreate(db)
+        if (oldVersion < 1 || newVersion > DATABASE_VERSION) {
+            // discard the data and start over
+            db.execSQL(SQL_DELETE + TABLE_APP_COUNT)
+            db.execSQL(SQL_DELETE + TABLE_APP_USAGE)
+            onCreate(db)
+            return
+        }
+        if (oldVersion < 2) {
+            // package_name becomes unique so counts can be upserted, merge any duplicate rows
+            db.execSQL("ALTER TABLE $TABLE_APP_COUNT RENAME TO ${TABLE_APP_COUNT}_old")
+            db.execSQL(SQL_CREATE_COUNT)
+            db.execSQL(
+                "INSERT INTO $TABLE_APP_COUNT ($COLUMN_PACKAGE_NAME, $COLUMN_PACKAGE_COUNT) "
+                        + "SELECT $COLUMN_PACKAGE_NAME, SUM($COLUMN_PACKAGE_COUNT) "
+                        + "FROM ${TABLE_APP_COUNT}_old WHERE $COLUMN_PACKAGE_NAME IS NOT NULL "
+                        + "GROUP BY $COLUMN_PACKAGE_NAME"
+            )
+            db.execSQL(SQL_DELETE + TABLE_APP_COUNT + "_old")
+        }
+        if (oldVersion < 3) {
+            // Seed the decayed usage from the plain counts, capped so that old favorites
+            // don't outrank the apps used today for months
+            db.execSQL(SQL_CREATE_USAGE)
+            db.execSQL(
+                "INSERT INTO $TABLE_APP_USAGE ($COLUMN_PACKAGE_NAME, $COLUMN_USAGE_SCORE, "
+                        + "$COLUMN_USAGE_LAST_UPDATE) SELECT $COLUMN_PACKAGE_NAME, "
+                        + "MIN($COLUMN_PACKAGE_COUNT, $MIGRATED_SCORE_CAP), "
+                        + "${System.currentTimeMillis()} FROM $TABLE_APP_COUNT "
+                        + "WHERE $COLUMN_PACKAGE_COUNT > 0"
+            )
+        }
     }
 
     override fun onDowngrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        onUpgrade(db, oldVersion, newVersion)
+        db.execSQL(SQL_DELETE + TABLE_APP_COUNT)
+        db.execSQL(SQL_DELETE + TABLE_APP_USAGE)
+        onCreate(db)
     }
 
     val appsCount: List<AppCountInfo>
@@ -49,6 +81,7 @@ class DbHelper(c: Context?) :
             val sqlQuery = "SELECT package_name, package_count FROM app_count;"
             val cursor: Cursor = db.rawQuery(sqlQuery, null)
             if (!cursor.moveToFirst()) {
+                cursor.close()
                 return apps
             }
             do {
@@ -60,37 +93,100 @@ class DbHelper(c: Context?) :
             return apps
         }
 
-    fun updateAppCount(packageName: String) {
-        val sqlQuery =
-            "SELECT package_count FROM app_count WHERE package_name='$packageName';"
-        val cursor: Cursor = db.rawQuery(sqlQuery, null)
-        var appCount = 0
-        if (cursor.moveToFirst()) {
-            appCount = cursor.getInt(0)
-        } else {
-            saveAppCount(packageName)
+    /**
+     * Adds the given launch counts in a single transaction.
+     */
+    fun addAppCounts(counts: Map<String, Int>) {
+        if (counts.isEmpty()) return
+        db.beginTransaction()
+        try {
+            if (Utilities.ATLEAST_R) {
+                // ON CONFLICT upserts need SQLite 3.24, which ships starting with R
+                val upsert = db.compileStatement(SQL_UPSERT_COUNT)
+                counts.forEach { (packageName, count) ->
+                    upsert.bindString(1, packageName)
+                    upsert.bindLong(2, count.toLong())
+                    upsert.executeInsert()
+                    upsert.clearBindings()
+                }
+                upsert.close()
+            } else {
+                val update = db.compileStatement(SQL_UPDATE_COUNT)
+                val insert = db.compileStatement(SQL_INSERT_COUNT)
+                counts.forEach { (packageName, count) ->
+                    update.bindLong(1, count.toLong())
+                    update.bindString(2, packageName)
+                    if (update.executeUpdateDelete() == 0) {
+                        insert.bindString(1, packageName)
+                        insert.bindLong(2, count.toLong())
+                        insert.executeInsert()
+                    }
+                }
+                update.close()
+                insert.close()
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
         }
-        cursor.close()
-        appCount++
-        val cv = ContentValues()
-        cv.put(COLUMN_PACKAGE_COUNT, appCount)
-        db.update(TABLE_APP_COUNT, cv, "package_name='$packageName'", null)
     }
 
-    private fun saveAppCount(packageName: String) {
-        val itemValues = ContentValues()
-        itemValues.put(COLUMN_PACKAGE_NAME, packageName)
-        itemValues.put(COLUMN_PACKAGE_COUNT, 0)
-        db.insert(TABLE_APP_COUNT, null, itemValues)
+    val appsUsage: Map<String, UsageHistogram>
+        get() {
+            val usage = HashMap<String, UsageHistogram>()
+            db.query(
+                TABLE_APP_USAGE,
+                arrayOf(
+                    COLUMN_PACKAGE_NAME, COLUMN_USAGE_SCORE, COLUMN_USAGE_LAST_UPDATE,
+                    COLUMN_USAGE_BUCKETS
+                ),
+                null, null, null, null, null
+            ).use { cursor ->
+                while (cursor.moveToNext()) {
+                    usage[cursor.getString(0)] = UsageHistogram.fromDb(
+                        cursor.getFloat(1), cursor.getLong(2), cursor.getBlob(3)
+                    )
+                }
+            }
+            return usage
+        }
+
+    /**
+     * Replaces the usage rows of the given packages and deletes the [removed] ones,
+     * in a single transaction.
+     */
+    fun saveAppsUsage(usage: Map<String, UsageHistogram>, removed: Collection<String>) {
+        if (usage.isEmpty() && removed.isEmpty()) return
+        db.beginTransaction()
+        try {
+            val replace = db.compileStatement(SQL_REPLACE_USAGE)
+            usage.forEach { (packageName, histogram) ->
+                replace.bindString(1, packageName)
+                replace.bindDouble(2, histogram.rawScore.toDouble())
+                replace.bindLong(3, histogram.lastUpdateTime)
+                replace.bindBlob(4, histogram.bucketsToByteArray())
+                replace.executeInsert()
+                replace.clearBindings()
+            }
+            replace.close()
+            removed.forEach {
+                db.delete(TABLE_APP_USAGE, "$COLUMN_PACKAGE_NAME = ?", arrayOf(it))
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
     }
 
     fun deleteApp(packageName: String) {
-        db.delete(TABLE_APP_COUNT, "package_name='$packageName'", null)
+        db.delete(TABLE_APP_COUNT, "$COLUMN_PACKAGE_NAME = ?", arrayOf(packageName))
     }
 
     companion object {
         private const val DATABASE_HOME: String = LauncherFiles.LAUNCHER_DB2
+        private const val DATABASE_VERSION = 3
         private const val TABLE_APP_COUNT = "app_count"
+        private const val TABLE_APP_USAGE = "app_usage"
 
         /*CREAR TABLA PARA CONTAR APPS*/
         private const val COLUMN_PACKAGE_NAME = "package_name"
@@ -98,9 +194,32 @@ class DbHelper(c: Context?) :
         private const val COLUMN_PACKAGE_ID = "count_id"
         private const val SQL_CREATE_COUNT = ("CREATE TABLE " + TABLE_APP_COUNT + " ("
                 + COLUMN_PACKAGE_ID + " INTEGER PRIMARY KEY,"
-                + COLUMN_PACKAGE_NAME + " VARCHAR, "
+                + COLUMN_PACKAGE_NAME + " VARCHAR UNIQUE, "
                 + COLUMN_PACKAGE_COUNT + " INTEGER)")
         private const val SQL_DELETE = "DROP TABLE IF EXISTS "
+
+        private const val COLUMN_USAGE_SCORE = "usage_score"
+        private const val COLUMN_USAGE_LAST_UPDATE = "last_update"
+        private const val COLUMN_USAGE_BUCKETS = "buckets"
+        private const val MIGRATED_SCORE_CAP = 20
+        private const val SQL_CREATE_USAGE = ("CREATE TABLE IF NOT EXISTS " + TABLE_APP_USAGE + " ("
+                + COLUMN_PACKAGE_NAME + " VARCHAR PRIMARY KEY, "
+                + COLUMN_USAGE_SCORE + " REAL NOT NULL DEFAULT 0, "
+                + COLUMN_USAGE_LAST_UPDATE + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_USAGE_BUCKETS + " BLOB)")
+        private const val SQL_REPLACE_USAGE = ("INSERT OR REPLACE INTO " + TABLE_APP_USAGE + " ("
+                + COLUMN_PACKAGE_NAME + ", " + COLUMN_USAGE_SCORE + ", "
+                + COLUMN_USAGE_LAST_UPDATE + ", " + COLUMN_USAGE_BUCKETS + ") VALUES (?, ?, ?, ?)")
+        private const val SQL_UPSERT_COUNT = ("INSERT INTO " + TABLE_APP_COUNT + " ("
+                + COLUMN_PACKAGE_NAME + ", " + COLUMN_PACKAGE_COUNT + ") VALUES (?, ?) "
+                + "ON CONFLICT(" + COLUMN_PACKAGE_NAME + ") DO UPDATE SET "
+                + COLUMN_PACKAGE_COUNT + " = " + COLUMN_PACKAGE_COUNT + " + excluded."
+                + COLUMN_PACKAGE_COUNT)
+        private const val SQL_UPDATE_COUNT = ("UPDATE " + TABLE_APP_COUNT + " SET "
+                + COLUMN_PACKAGE_COUNT + " = " + COLUMN_PACKAGE_COUNT + " + ? WHERE "
+                + COLUMN_PACKAGE_NAME + " = ?")
+        private const val SQL_INSERT_COUNT = ("INSERT INTO " + TABLE_APP_COUNT + " ("
+                + COLUMN_PACKAGE_NAME + ", " + COLUMN_PACKAGE_COUNT + ") VALUES (?, ?)")
     }
 
 }
@@ -37,7 +37,6 @@ import android.graphics.drawable.LayerDrawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Process;
-import android.os.SystemClock;
 import android.os.UserHandle;
 import android.util.Log;
 import android.util.TypedValue;
@@ -51,7 +50,6 @@ import com.saggitt.omega.icons.ClockMetadata;
 import com.saggitt.omega.icons.CustomAdaptiveIconDrawable;
 
 import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
 import java.util.function.IntFunction;
 
 /**
@@ -65,10 +63,6 @@ public class ClockDrawableWrapper extends CustomAdaptiveIconDrawable implements
 
     private static final boolean DISABLE_SECONDS = true;
 
-    // Time after which the clock icon should check for an update. The actual invalidate
-    // will only happen in case of any change.
-    public static final long TICK_MS = DISABLE_SECONDS ? TimeUnit.MINUTES.toMillis(1) : 200L;
-
     private static final String LAUNCHER_PACKAGE = "com.android.launcher3";
     private static final String ROUND_ICON_METADATA_KEY = LAUNCHER_PACKAGE
             + ".LEVEL_PER_TICK_ICON_ROUND";
@@ -363,7 +357,8 @@ public class ClockDrawableWrapper extends CustomAdaptiveIconDrawable implements
         }
     }
 
-    private static class ClockIconDrawable extends FastBitmapDrawable implements Runnable {
+    private static class ClockIconDrawable extends FastBitmapDrawable
+            implements ClockTicker.Tickable {
 
         private final Calendar mTime = Calendar.getInstance();
 
@@ -403,7 +398,9 @@ public class ClockDrawableWrapper extends CustomAdaptiveIconDrawable implements
             canvas.clipPath(mFullDrawable.getIconMask());
             mForeground.draw(canvas);
 
-            reschedule();
+            if (isVisible()) {
+                ClockTicker.getInstance().add(this);
+            }
         }
 
         @Override
@@ -418,36 +415,36 @@ public class ClockDrawableWrapper extends CustomAdaptiveIconDrawable implements
         }
 
         @Override
-        public void run() {
+        public boolean onTick() {
+            if (getCallback() == null) {
+                // Not attached anymore
+                ClockTicker.getInstance().remove(this);
+                return false;
+            }
+            // The actual invalidate will only happen in case of any change.
             if (mInfo.animInfo.applyTime(mTime, mForeground)) {
                 invalidateSelf();
-            } else {
-                reschedule();
+                return true;
             }
+            return false;
+        }
+
+        @Override
+        public boolean needsSecondTicks() {
+            return mInfo.animInfo.secondLayerIndex != INVALID_VALUE;
         }
 
         @Override
         public boolean setVisible(boolean visible, boolean restart) {
             boolean result = super.setVisible(visible, restart);
             if (visible) {
-                reschedule();
+                ClockTicker.getInstance().add(this);
             } else {
-                unscheduleSelf(this);
+                ClockTicker.getInstance().remove(this);
             }
             return result;
         }
 
-        private void reschedule() {
-            if (!isVisible()) {
-                return;
-            }
-
-            unscheduleSelf(this);
-            final long upTime = SystemClock.uptimeMillis();
-            final long step = TICK_MS; /* tick every 200 ms */
-            scheduleSelf(this, upTime - ((upTime % step)) + step);
-        }
-
         @Override
         public ConstantState getConstantState() {
             return new ClockConstantState(mInfo, isDisabled());
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.UiThread;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide timer updating all the visible animated clock icons together.
+ *
+ * Ticks are aligned to the wall clock second (or minute) boundary, and the icons are updated in
+ * the next frame callback, so that all the clocks move in the same frame. The ticker stops
+ * while it is paused, typically when the launcher isn't visible, and only ticks every minute
+ * in low power mode.
+ */
+@UiThread
+public class ClockTicker {
+
+    /**
+     * An icon updated by the ticker
+     */
+    public interface Tickable {
+
+        /**
+         * Updates the icon to the current time.
+         *
+         * @return true if the icon was invalidated
+         */
+        boolean onTick();
+
+        /**
+         * Returns true if the icon has a second hand
+         */
+        boolean needsSecondTicks();
+    }
+
+    private static final long SECOND_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static ClockTicker sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mTickRunnable = this::onTick;
+    private final Choreographer.FrameCallback mFrameCallback = t -> onFrame();
+
+    // Weak so that an icon dropped without being hidden doesn't leak
+    private final Set<Tickable> mTickables = Collections.newSetFromMap(new WeakHashMap<>());
+    private final ArrayList<Tickable> mTickablesCopy = new ArrayList<>();
+
+    private boolean mPaused;
+    private boolean mLowPowerMode;
+    private boolean mTickScheduled;
+    private boolean mFrameScheduled;
+    private long mStepMs;
+
+    // Stats
+    private long mTickCount;
+    private long mRedrawCount;
+    private long mMinuteStart = SystemClock.uptimeMillis();
+    private int mMinuteRedraws;
+    private int mLastMinuteRedraws;
+
+    public static ClockTicker getInstance() {
+        if (sInstance == null) {
+            sInstance = new ClockTicker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts ticking {@param tickable} until it is removed.
+     */
+    public void add(Tickable tickable) {
+        if (mTickables.add(tickable) && mTickScheduled && mStepMs != getStepMs()) {
+            // The next tick is too late for the new icon
+            mHandler.removeCallbacks(mTickRunnable);
+            mTickScheduled = false;
+        }
+        scheduleTick();
+    }
+
+    public void remove(Tickable tickable) {
+        mTickables.remove(tickable);
+    }
+
+    /**
+     * Stops or resumes all the ticks.
+     */
+    public void setPaused(boolean paused) {
+        if (mPaused == paused) {
+            return;
+        }
+        mPaused = paused;
+        if (paused) {
+            cancelTick();
+        } else {
+            // The time has changed while paused
+            mHandler.post(mTickRunnable);
+            mTickScheduled = true;
+        }
+    }
+
+    /**
+     * Limits the ticks to one per minute if {@param lowPowerMode} is true.
+     */
+    public void setLowPowerMode(boolean lowPowerMode) {
+        if (mLowPowerMode != lowPowerMode) {
+            mLowPowerMode = lowPowerMode;
+            cancelTick();
+            scheduleTick();
+        }
+    }
+
+    private void scheduleTick() {
+        if (mPaused || mTickScheduled || mTickables.isEmpty()) {
+            return;
+        }
+        mStepMs = getStepMs();
+        long delay = mStepMs - (System.currentTimeMillis() % mStepMs);
+        mHandler.postAtTime(mTickRunnable, SystemClock.uptimeMillis() + delay);
+        mTickScheduled = true;
+    }
+
+    private long getStepMs() {
+        if (!mLowPowerMode) {
+            for (Tickable tickable : mTickables) {
+                if (tickable.needsSecondTicks()) {
+                    return SECOND_MS;
+                }
+            }
+        }
+        return MINUTE_MS;
+    }
+
+    private void cancelTick() {
+        mHandler.removeCallbacks(mTickRunnable);
+        mTickScheduled = false;
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+    }
+
+    private void onTick() {
+        mTickScheduled = false;
+        if (mPaused || mTickables.isEmpty()) {
+            return;
+        }
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void onFrame() {
+        mFrameScheduled = false;
+        mTickCount++;
+        // Icons can remove themselves while ticking
+        mTickablesCopy.addAll(mTickables);
+        int redraws = 0;
+        for (Tickable tickable : mTickablesCopy) {
+            if (tickable.onTick()) {
+                redraws++;
+            }
+        }
+        mTickablesCopy.clear();
+        countRedraws(redraws);
+        scheduleTick();
+    }
+
+    private void countRedraws(int count) {
+        long now = SystemClock.uptimeMillis();
+        if (now - mMinuteStart >= MINUTE_MS) {
+            mLastMinuteRedraws = now - mMinuteStart < 2 * MINUTE_MS ? mMinuteRedraws : 0;
+            mMinuteRedraws = 0;
+            mMinuteStart = now;
+        }
+        mMinuteRedraws += count;
+        mRedrawCount += count;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "ClockTicker:"
+                + " clocks=" + mTickables.size()
+                + " paused=" + mPaused
+                + " lowPowerMode=" + mLowPowerMode);
+        writer.println(prefix + "  ticks=" + mTickCount
+                + " redraws=" + mRedrawCount
+                + " redrawsLastMinute=" + mLastMinuteRedraws);
+    }
+}
@@ -52,12 +52,17 @@ import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.saggitt.omega.icons.CustomAdaptiveIconDrawable;
 
-import java.util.AbstractMap;
-import java.util.Collections;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 public abstract class BaseIconCache {
@@ -65,7 +70,13 @@ public abstract class BaseIconCache {
     private static final String TAG = "BaseIconCache";
     private static final boolean DEBUG = false;
 
-    private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
+    // Part of the heap which can be used by the icons in memory, besides the pinned ones
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 8;
+
+    // Max number of components in a single query, below the limit of 999 SQLite arguments
+    private static final int MAX_KEYS_PER_QUERY = 500;
+    // Max number of tasks helping the calling thread decode the preloaded icons
+    private static final int MAX_PRELOAD_DECODE_TASKS = 3;
 
     // Empty class name is used for storing package default entry.
     public static final String EMPTY_CLASS_NAME = ".";
@@ -83,11 +94,14 @@ public abstract class BaseIconCache {
     protected final Context mContext;
     protected final PackageManager mPackageManager;
 
-    private final Map<ComponentKey, CacheEntry> mCache;
+    private final IconMemoryCache mCache;
     protected final Handler mWorkerHandler;
 
     protected int mIconDpi;
     protected IconDB mIconDb;
+    protected IconBitmapStore mIconStore;
+    // Whether the slots used by the DB entries were marked in mIconStore
+    private boolean mIconSlotsLoaded;
     protected LocaleList mLocaleList = LocaleList.getEmptyLocaleList();
     protected String mSystemState = "";
 
@@ -102,26 +116,13 @@ public abstract class BaseIconCache {
         mBgLooper = bgLooper;
         mWorkerHandler = new Handler(mBgLooper);
 
-        if (inMemoryCache) {
-            mCache = new HashMap<>(INITIAL_ICON_CACHE_CAPACITY);
-        } else {
-            // Use a dummy cache
-            mCache = new AbstractMap<ComponentKey, CacheEntry>() {
-                @Override
-                public Set<Entry<ComponentKey, CacheEntry>> entrySet() {
-                    return Collections.emptySet();
-                }
-
-                @Override
-                public CacheEntry put(ComponentKey key, CacheEntry value) {
-                    return value;
-                }
-            };
-        }
+        mCache = new IconMemoryCache(inMemoryCache, (int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_FRACTION));
 
         updateSystemState();
         mIconDpi = iconDpi;
         mIconDb = new IconDB(context, dbFileName, iconPixelSize);
+        mIconStore = new IconBitmapStore(context, dbFileName, iconPixelSize);
     }
 
     /**
@@ -150,6 +151,9 @@ public abstract class BaseIconCache {
         mIconDb.clear();
         mIconDb.close();
         mIconDb = new IconDB(mContext, mDbFileName, iconPixelSize);
+        mIconStore.clear();
+        mIconStore = new IconBitmapStore(mContext, mDbFileName, iconPixelSize);
+        mIconSlotsLoaded = true;
         mCache.clear();
     }
 
@@ -198,16 +202,8 @@ public abstract class BaseIconCache {
      * Remove any records for the supplied package name from memory.
      */
     private void removeFromMemCacheLocked(String packageName, UserHandle user) {
-        HashSet<ComponentKey> forDeletion = new HashSet<>();
-        for (ComponentKey key : mCache.keySet()) {
-            if (key.componentName.getPackageName().equals(packageName)
-                    && key.user.equals(user)) {
-                forDeletion.add(key);
-            }
-        }
-        for (ComponentKey condemned : forDeletion) {
-            mCache.remove(condemned);
-        }
+        mCache.removeIf(key -> key.componentName.getPackageName().equals(packageName)
+                && key.user.equals(user));
     }
 
     /**
@@ -216,11 +212,27 @@ public abstract class BaseIconCache {
     public synchronized void removeIconsForPkg(String packageName, UserHandle user) {
         removeFromMemCacheLocked(packageName, user);
         long userSerial = getSerialNumberForUser(user);
-        mIconDb.delete(
+        deleteEntries(
                 IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{packageName + "/%", Long.toString(userSerial)});
     }
 
+    /**
+     * Deletes the DB entries matching {@param selection}, and frees their slots in
+     * {@link #mIconStore} so that new icons reuse them.
+     */
+    synchronized void deleteEntries(String selection, String[] selectionArgs) {
+        try (Cursor c = mIconDb.query(new String[]{IconDB.COLUMN_ICON_SLOT},
+                "(" + selection + ") AND " + IconDB.COLUMN_ICON_SLOT + " >= 0", selectionArgs)) {
+            while (c.moveToNext()) {
+                mIconStore.free(c.getInt(0));
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon cache", e);
+        }
+        mIconDb.delete(selection, selectionArgs);
+    }
+
     public IconCacheUpdateHandler getUpdateHandler() {
         updateSystemState();
         return new IconCacheUpdateHandler(this);
@@ -266,34 +278,109 @@ public abstract class BaseIconCache {
             entry = new CacheEntry();
             entry.bitmap = cachingLogic.loadIcon(mContext, object);
         }
+        addEntryToDBAndMemCacheLocked(object, cachingLogic, entry, info, userSerial);
+    }
+
+    /**
+     * Adds an entry into the DB and the in-memory cache using an icon which was already created
+     * by the caller, replacing any existing entry. This allows {@link CachingLogic#loadIcon} to
+     * run outside the cache lock, on any thread.
+     */
+    public synchronized <T> void addIconToDBAndMemCache(T object, CachingLogic<T> cachingLogic,
+            BitmapInfo bitmap, PackageInfo info, long userSerial) {
+        CacheEntry entry = new CacheEntry();
+        entry.bitmap = bitmap;
+        addEntryToDBAndMemCacheLocked(object, cachingLogic, entry, info, userSerial);
+    }
+
+    private <T> void addEntryToDBAndMemCacheLocked(T object, CachingLogic<T> cachingLogic,
+            CacheEntry entry, PackageInfo info, long userSerial) {
+        UserHandle user = cachingLogic.getUser(object);
+        ComponentName componentName = cachingLogic.getComponent(object);
         // Icon can't be loaded from cachingLogic, which implies alternative icon was loaded
         // (e.g. fallback icon, default icon). So we drop here since there's no point in caching
         // an empty entry.
         if (entry.bitmap.isNullOrLowRes()) return;
         entry.title = cachingLogic.getLabel(object);
         entry.contentDescription = mPackageManager.getUserBadgedLabel(entry.title, user);
-        if (cachingLogic.addToMemCache()) mCache.put(key, entry);
+        if (cachingLogic.addToMemCache()) {
+            mCache.put(new ComponentKey(componentName, user), entry);
+        }
 
         ContentValues values = newContentValues(entry.bitmap, entry.title.toString(),
                 componentName.getPackageName(), cachingLogic.getKeywords(object, mLocaleList));
-        addIconToDB(values, componentName, info, userSerial,
+        addIconToDB(values, entry.bitmap, componentName, info, userSerial,
                 cachingLogic.getLastUpdatedTime(object, info));
     }
 
     /**
-     * Updates {@param values} to contain versioning information and adds it to the DB.
+     * Updates {@param values} to contain the icon and versioning information and adds it to
+     * the DB.
      *
-     * @param values {@link ContentValues} containing icon & title
+     * @param values {@link ContentValues} containing color & title
      */
-    private void addIconToDB(ContentValues values, ComponentName key,
+    private void addIconToDB(ContentValues values, BitmapInfo bitmapInfo, ComponentName key,
                              PackageInfo info, long userSerial, long lastUpdateTime) {
-        values.put(IconDB.COLUMN_COMPONENT, key.flattenToString());
+        String component = key.flattenToString();
+        int slot = storeIconLocked(bitmapInfo, component, userSerial);
+        values.put(IconDB.COLUMN_ICON_SLOT, slot);
+        // Icons which don't fit in the store are kept as PNG
+        values.put(IconDB.COLUMN_ICON, slot < 0 ? bitmapInfo.toByteArray() : null);
+        values.put(IconDB.COLUMN_COMPONENT, component);
         values.put(IconDB.COLUMN_USER, userSerial);
         values.put(IconDB.COLUMN_LAST_UPDATED, lastUpdateTime);
         values.put(IconDB.COLUMN_VERSION, info.versionCode);
         mIconDb.insertOrReplace(values);
     }
 
+    /**
+     * Writes the pixels of {@param bitmapInfo} in {@link #mIconStore}, reusing the slot of the
+     * existing entry if any.
+     *
+     * @return the slot used, or -1 if the icon must be stored in the DB instead.
+     */
+    private int storeIconLocked(BitmapInfo bitmapInfo, String component, long userSerial) {
+        // Themed icons carry more data than the pixels
+        if (bitmapInfo.getClass() != BitmapInfo.class || bitmapInfo.isNullOrLowRes()
+                || !mIconStore.canStore(bitmapInfo.icon)) {
+            return -1;
+        }
+        loadIconSlotsLocked();
+        int slot = -1;
+        try (Cursor c = mIconDb.query(new String[]{IconDB.COLUMN_ICON_SLOT},
+                IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
+                new String[]{component, Long.toString(userSerial)})) {
+            if (c.moveToNext()) {
+                slot = c.getInt(0);
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon cache", e);
+        }
+        return mIconStore.write(slot, getIconSlotKey(component, userSerial), bitmapInfo.icon);
+    }
+
+    private void loadIconSlotsLocked() {
+        if (mIconSlotsLoaded) {
+            return;
+        }
+        mIconSlotsLoaded = true;
+        try (Cursor c = mIconDb.query(new String[]{IconDB.COLUMN_ICON_SLOT},
+                IconDB.COLUMN_ICON_SLOT + " >= 0", null)) {
+            while (c.moveToNext()) {
+                mIconStore.markUsed(c.getInt(0));
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon cache", e);
+        }
+    }
+
+    /**
+     * Returns the key written with the icon of an entry in {@link #mIconStore}.
+     */
+    private static int getIconSlotKey(String component, long userSerial) {
+        return 31 * component.hashCode() + Long.hashCode(userSerial);
+    }
+
     public synchronized BitmapInfo getDefaultIcon(UserHandle user) {
         if (!mDefaultIcons.containsKey(user)) {
             mDefaultIcons.put(user, makeDefaultIcon(user));
@@ -318,9 +405,6 @@ public abstract class BaseIconCache {
         CacheEntry entry = mCache.get(cacheKey);
         if (entry == null || (entry.bitmap.isLowRes() && !useLowResIcon)) {
             entry = new CacheEntry();
-            if (cachingLogic.addToMemCache()) {
-                mCache.put(cacheKey, entry);
-            }
 
             // Check the DB first.
             T object = null;
@@ -363,13 +447,46 @@ public abstract class BaseIconCache {
                             cachingLogic.getDescription(object, entry.title), user);
                 }
             }
+            // Add the entry once filled, as its size depends on its icon
+            if (cachingLogic.addToMemCache()) {
+                mCache.put(cacheKey, entry);
+            }
         }
         return entry;
     }
 
+    /**
+     * Returns the icon stored for {@param cacheKey} in memory or in the persistent DB, without
+     * checking it against the package manager, or null if there is none.
+     */
+    @Nullable
+    public synchronized BitmapInfo getCachedIcon(ComponentKey cacheKey) {
+        CacheEntry entry = mCache.get(cacheKey);
+        if (entry != null && !entry.bitmap.isNullOrLowRes()) {
+            return entry.bitmap;
+        }
+        entry = new CacheEntry();
+        return getEntryFromDB(cacheKey, entry, false /* lowRes */) ? entry.bitmap : null;
+    }
+
     public synchronized void clear() {
         assertWorkerThread();
         mIconDb.clear();
+        mIconStore.clear();
+        mIconSlotsLoaded = true;
+    }
+
+    /**
+     * Removes all the entries from memory and persistent DB, keeping the current icon params.
+     * Used when the source of the icons changes, but the grid does not.
+     */
+    public synchronized void clearAllIcons() {
+        assertWorkerThread();
+        mDefaultIcons.clear();
+        mIconDb.clear();
+        mIconStore.clear();
+        mIconSlotsLoaded = true;
+        mCache.clear();
     }
 
     /**
@@ -396,7 +513,8 @@ public abstract class BaseIconCache {
             li.close();
         }
         if (!TextUtils.isEmpty(title) && entry.bitmap.icon != null) {
-            mCache.put(cacheKey, entry);
+            // This entry can't be loaded again from the DB
+            mCache.put(cacheKey, entry, true /* alwaysPin */);
         }
     }
 
@@ -447,8 +565,8 @@ public abstract class BaseIconCache {
                     // package updates.
                     ContentValues values = newContentValues(
                             iconInfo, entry.title.toString(), packageName, null);
-                    addIconToDB(values, cacheKey.componentName, info, getSerialNumberForUser(user),
-                            info.lastUpdateTime);
+                    addIconToDB(values, iconInfo, cacheKey.componentName, info,
+                            getSerialNumberForUser(user), info.lastUpdateTime);
 
                 } catch (NameNotFoundException e) {
                     if (DEBUG) Log.d(TAG, "Application not installed " + packageName);
@@ -466,13 +584,13 @@ public abstract class BaseIconCache {
 
     protected boolean getEntryFromDB(ComponentKey cacheKey, CacheEntry entry, boolean lowRes) {
         Cursor c = null;
+        String component = cacheKey.componentName.flattenToString();
+        long userSerial = getSerialNumberForUser(cacheKey.user);
         try {
             c = mIconDb.query(
                     lowRes ? IconDB.COLUMNS_LOW_RES : IconDB.COLUMNS_HIGH_RES,
                     IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
-                    new String[]{
-                            cacheKey.componentName.flattenToString(),
-                            Long.toString(getSerialNumberForUser(cacheKey.user))});
+                    new String[]{component, Long.toString(userSerial)});
             if (c.moveToNext()) {
                 // Set the alpha to be 255, so that we never have a wrong color
                 entry.bitmap = BitmapInfo.of(LOW_RES_ICON, setColorAlphaBound(c.getInt(0), 255));
@@ -486,6 +604,16 @@ public abstract class BaseIconCache {
                 }
 
                 if (!lowRes) {
+                    int slot = c.getInt(3);
+                    if (slot >= 0) {
+                        Bitmap icon = mIconStore.read(slot, getIconSlotKey(component, userSerial));
+                        if (icon == null) {
+                            // The store lost this icon, let the caller reload it
+                            return false;
+                        }
+                        entry.bitmap = BitmapInfo.of(icon, entry.bitmap.color);
+                        return true;
+                    }
                     try {
                         entry.bitmap = BitmapInfo.fromByteArray(
                                 c.getBlob(2), entry.bitmap.color, cacheKey.user, this, mContext);
@@ -505,6 +633,203 @@ public abstract class BaseIconCache {
         return false;
     }
 
+    /**
+     * Loads the entries of {@param cacheKeys} which are missing from the memory cache from the
+     * persistent DB, so that looking them up afterwards is a memory hit. The memory cache is
+     * checked under a single lock, the DB is read with one query per user, and PNG icons are
+     * decoded outside of the lock, in parallel on {@link #getPreloadExecutor()} if there is one.
+     * Keys which aren't found in the DB are left to the regular lookup, which also checks them
+     * against the package manager.
+     *
+     * This should only be used for components whose {@link CachingLogic} keeps them in memory.
+     */
+    public void preloadEntries(Collection<ComponentKey> cacheKeys, boolean useLowResIcon) {
+        assertWorkerThread();
+        ArrayList<PreloadedEntry> loaded = new ArrayList<>();
+        synchronized (this) {
+            HashMap<UserHandle, HashSet<ComponentKey>> misses = new HashMap<>();
+            for (ComponentKey key : cacheKeys) {
+                CacheEntry entry = mCache.get(key);
+                if (entry == null || (entry.bitmap.isLowRes() && !useLowResIcon)) {
+                    misses.computeIfAbsent(key.user, u -> new HashSet<>()).add(key);
+                }
+            }
+            for (Map.Entry<UserHandle, HashSet<ComponentKey>> userMisses : misses.entrySet()) {
+                queryEntriesLocked(userMisses.getKey(), new ArrayList<>(userMisses.getValue()),
+                        useLowResIcon, loaded);
+            }
+        }
+        if (loaded.isEmpty()) {
+            return;
+        }
+
+        decodePreloadedEntries(loaded);
+
+        synchronized (this) {
+            for (PreloadedEntry p : loaded) {
+                if (p.entry.bitmap == null) {
+                    continue;
+                }
+                CacheEntry entry = mCache.get(p.key);
+                if (entry == null || (entry.bitmap.isLowRes() && !p.entry.bitmap.isLowRes())) {
+                    mCache.put(p.key, p.entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes {@param entries} on the calling thread, helped by up to
+     * {@link #MAX_PRELOAD_DECODE_TASKS} tasks on {@link #getPreloadExecutor()}.
+     */
+    private void decodePreloadedEntries(ArrayList<PreloadedEntry> entries) {
+        Executor executor = getPreloadExecutor();
+        int taskCount = executor == null ? 0
+                : Math.min(MAX_PRELOAD_DECODE_TASKS, entries.size() - 1);
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch decoded = new CountDownLatch(entries.size());
+        Runnable decodeAll = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < entries.size()) {
+                try {
+                    decodePreloadedEntry(entries.get(i));
+                } finally {
+                    decoded.countDown();
+                }
+            }
+        };
+        for (int i = 0; i < taskCount; i++) {
+            executor.execute(decodeAll);
+        }
+        // Only wait for the entries being decoded, tasks which start late find nothing left
+        decodeAll.run();
+        try {
+            decoded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the executor used to decode the icons read by {@link #preloadEntries}, or null to
+     * decode them on the calling thread.
+     */
+    @Nullable
+    protected Executor getPreloadExecutor() {
+        return null;
+    }
+
+    private void queryEntriesLocked(UserHandle user, List<ComponentKey> keys, boolean lowRes,
+                                    ArrayList<PreloadedEntry> out) {
+        long userSerial = getSerialNumberForUser(user);
+        HashMap<String, ComponentKey> keysByComponent = new HashMap<>();
+        for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_QUERY) {
+            List<ComponentKey> chunk =
+                    keys.subList(start, Math.min(keys.size(), start + MAX_KEYS_PER_QUERY));
+            String[] args = new String[chunk.size() + 1];
+            args[0] = Long.toString(userSerial);
+            StringBuilder selection = new StringBuilder(IconDB.COLUMN_USER)
+                    .append(" = ? AND ").append(IconDB.COLUMN_COMPONENT).append(" IN (");
+            keysByComponent.clear();
+            for (int i = 0; i < chunk.size(); i++) {
+                String component = chunk.get(i).componentName.flattenToString();
+                keysByComponent.put(component, chunk.get(i));
+                args[i + 1] = component;
+                selection.append(i == 0 ? "?" : ", ?");
+            }
+            selection.append(')');
+
+            try (Cursor c = mIconDb.query(
+                    lowRes ? IconDB.COLUMNS_BATCH_LOW_RES : IconDB.COLUMNS_BATCH_HIGH_RES,
+                    selection.toString(), args)) {
+                while (c.moveToNext()) {
+                    String component = c.getString(0);
+                    ComponentKey key = keysByComponent.get(component);
+                    String title = c.getString(2);
+                    if (key == null || TextUtils.isEmpty(title)) {
+                        // Missing labels are loaded by the regular lookup
+                        continue;
+                    }
+                    PreloadedEntry p = new PreloadedEntry(key, title);
+                    // Set the alpha to be 255, so that we never have a wrong color
+                    p.color = setColorAlphaBound(c.getInt(1), 255);
+                    if (lowRes) {
+                        p.entry.bitmap = BitmapInfo.of(LOW_RES_ICON, p.color);
+                    } else if (c.getInt(4) >= 0) {
+                        Bitmap icon = mIconStore.read(
+                                c.getInt(4), getIconSlotKey(component, userSerial));
+                        if (icon == null) {
+                            continue;
+                        }
+                        p.entry.bitmap = BitmapInfo.of(icon, p.color);
+                    } else {
+                        p.iconBlob = c.getBlob(3);
+                        if (p.iconBlob == null) {
+                            continue;
+                        }
+                    }
+                    out.add(p);
+                }
+            } catch (SQLiteException e) {
+                Log.d(TAG, "Error reading icon cache", e);
+            }
+        }
+    }
+
+    /**
+     * Fills the parts of {@param p} which don't need the cache lock. This is called in parallel.
+     */
+    private void decodePreloadedEntry(PreloadedEntry p) {
+        p.entry.contentDescription =
+                mPackageManager.getUserBadgedLabel(p.entry.title, p.key.user);
+        if (p.iconBlob != null) {
+            try {
+                p.entry.bitmap = BitmapInfo.fromByteArray(
+                        p.iconBlob, p.color, p.key.user, this, mContext);
+            } catch (Exception e) {
+                p.entry.bitmap = null;
+            }
+        }
+    }
+
+    /**
+     * Entry read by {@link #preloadEntries}, before it is added to the memory cache.
+     */
+    private static class PreloadedEntry {
+
+        final ComponentKey key;
+        final CacheEntry entry = new CacheEntry();
+        int color;
+        @Nullable
+        byte[] iconBlob;
+
+        PreloadedEntry(ComponentKey key, String title) {
+            this.key = key;
+            entry.title = title;
+        }
+    }
+
+    /**
+     * Keeps the in-memory entries of {@param cacheKeys} when memory is trimmed, and releases
+     * the keys passed previously.
+     */
+    public synchronized void setPinnedIcons(Set<ComponentKey> cacheKeys) {
+        mCache.setPinnedKeys(cacheKeys);
+    }
+
+    /**
+     * Releases the in-memory entries which aren't pinned, depending on {@param level}.
+     *
+     * @see android.content.ComponentCallbacks2#onTrimMemory(int)
+     */
+    public synchronized void onTrimMemory(int level) {
+        mCache.onTrimMemory(level);
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        mCache.dump(prefix, writer);
+    }
+
     /**
      * Returns a cursor for an arbitrary query to the cache db
      */
@@ -517,7 +842,7 @@ public abstract class BaseIconCache {
      * Cache class to store the actual entries on disk
      */
     public static final class IconDB extends SQLiteCacheHelper {
-        private static final int RELEASE_VERSION = 31;
+        private static final int RELEASE_VERSION = 32;
 
         public static final String TABLE_NAME = "icons";
         public static final String COLUMN_ROWID = "rowid";
@@ -530,9 +855,16 @@ public abstract class BaseIconCache {
         public static final String COLUMN_LABEL = "label";
         public static final String COLUMN_SYSTEM_STATE = "system_state";
         public static final String COLUMN_KEYWORDS = "keywords";
+        public static final String COLUMN_ICON_SLOT = "icon_slot";
 
         public static final String[] COLUMNS_HIGH_RES = new String[]{
-                IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL, IconDB.COLUMN_ICON};
+                IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL, IconDB.COLUMN_ICON,
+                IconDB.COLUMN_ICON_SLOT};
+        public static final String[] COLUMNS_BATCH_HIGH_RES = new String[]{
+                IconDB.COLUMN_COMPONENT, IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL,
+                IconDB.COLUMN_ICON, IconDB.COLUMN_ICON_SLOT};
+        public static final String[] COLUMNS_BATCH_LOW_RES = new String[]{
+                IconDB.COLUMN_COMPONENT, IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL};
         public static final String[] COLUMNS_LOW_RES = new String[]{
                 IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL};
 
@@ -552,6 +884,7 @@ public abstract class BaseIconCache {
                     + COLUMN_LABEL + " TEXT, "
                     + COLUMN_SYSTEM_STATE + " TEXT, "
                     + COLUMN_KEYWORDS + " TEXT, "
+                    + COLUMN_ICON_SLOT + " INTEGER NOT NULL DEFAULT -1, "
                     + "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") "
                     + ");");
         }
@@ -560,7 +893,6 @@ public abstract class BaseIconCache {
     private ContentValues newContentValues(BitmapInfo bitmapInfo, String label,
                                            String packageName, @Nullable String keywords) {
         ContentValues values = new ContentValues();
-        values.put(IconDB.COLUMN_ICON, bitmapInfo.toByteArray());
         values.put(IconDB.COLUMN_ICON_COLOR, bitmapInfo.color);
 
         values.put(IconDB.COLUMN_LABEL, label);
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.icons.BitmapRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * Memory mapped file of fixed size slots, each holding the raw ARGB_8888 pixels of one icon of
+ * the cache, so that icons can be read back with a copy instead of a PNG decode. The rest of
+ * the entry (label, color, versioning) stays in {@link BaseIconCache.IconDB}, which stores
+ * the slot of every icon.
+ *
+ * Each slot starts with a key identifying the entry which wrote it, so a slot overwritten or
+ * lost since the DB row was written is detected and treated as a miss. The slots in use are
+ * collected from the DB when it is opened, and freed again when their rows are deleted.
+ *
+ * The file is grown by a few slots at a time, writing zeros before the new slots are mapped so
+ * that its blocks are allocated: writing to a mapped page which has no block on a full disk
+ * raises SIGBUS instead of an IOException. When the file can't grow, the icons are kept as PNG
+ * in the DB.
+ *
+ * This class is not thread safe, it is accessed under the {@link BaseIconCache} lock.
+ */
+public class IconBitmapStore {
+
+    private static final String TAG = "IconBitmapStore";
+
+    // Version of the file layout, files of older versions may not have all their blocks
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int SLOT_HEADER_SIZE = 4;
+    // Slots added when the file grows, a slot is ~150KB for xxhdpi icons
+    private static final int GROW_SLOT_COUNT = 16;
+    private static final int ALLOCATE_CHUNK_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private final int mIconSize;
+    private final int mSlotSize;
+
+    private final BitSet mUsedSlots = new BitSet();
+
+    @Nullable
+    private RandomAccessFile mRaf;
+    @Nullable
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+
+    public IconBitmapStore(Context context, String dbFileName, int iconPixelSize) {
+        // The icon size is part of the name, as it defines the layout of the file
+        String prefix = dbFileName + "_icons_";
+        mFile = context.getDatabasePath(prefix + "v" + FORMAT_VERSION + "_" + iconPixelSize);
+        mIconSize = iconPixelSize;
+        mSlotSize = SLOT_HEADER_SIZE + iconPixelSize * iconPixelSize * 4;
+        deleteStaleStores(prefix);
+    }
+
+    /**
+     * Deletes the stores left by other icon sizes or file versions, which are never read again.
+     */
+    private void deleteStaleStores(String prefix) {
+        File[] files = mFile.getParentFile() == null ? null : mFile.getParentFile().listFiles(
+                (dir, name) -> name.startsWith(prefix) && !name.equals(mFile.getName()));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Marks {@param slot} as used by an entry of the DB.
+     */
+    public void markUsed(int slot) {
+        if (slot >= 0) {
+            mUsedSlots.set(slot);
+        }
+    }
+
+    /**
+     * Marks {@param slot} as free, once the DB entry using it was deleted.
+     */
+    public void free(int slot) {
+        if (slot >= 0) {
+            mUsedSlots.clear(slot);
+        }
+    }
+
+    /**
+     * Returns true if {@param icon} can be kept in this store.
+     */
+    public boolean canStore(Bitmap icon) {
+        return icon.getWidth() == mIconSize && icon.getHeight() == mIconSize;
+    }
+
+    /**
+     * Writes {@param icon} in {@param slot} if it is valid, or in a free slot otherwise.
+     *
+     * @return the slot used, or -1 if the icon couldn't be written.
+     */
+    public int write(int slot, int key, Bitmap icon) {
+        if (!canStore(icon)) {
+            return -1;
+        }
+        if (slot < 0) {
+            slot = mUsedSlots.nextClearBit(0);
+        }
+        if (!ensureCapacity(slot + 1)) {
+            return -1;
+        }
+        // Hardware bitmaps can't be copied to a buffer directly
+        Bitmap pixels = icon.getConfig() == Bitmap.Config.ARGB_8888
+                ? icon : icon.copy(Bitmap.Config.ARGB_8888, false);
+        if (pixels == null) {
+            return -1;
+        }
+
+        ByteBuffer slice = getSlot(slot);
+        // Invalidate the slot while it is written
+        slice.putInt(0, 0);
+        slice.position(SLOT_HEADER_SIZE);
+        pixels.copyPixelsToBuffer(slice);
+        slice.putInt(0, toSlotKey(key));
+        mUsedSlots.set(slot);
+        if (pixels != icon) {
+            pixels.recycle();
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the icon in {@param slot} if it was written for {@param key}, null otherwise.
+     */
+    @Nullable
+    public Bitmap read(int slot, int key) {
+        if (slot < 0 || !ensureOpen() || slot >= mCapacity) {
+            return null;
+        }
+        ByteBuffer slice = getSlot(slot);
+        if (slice.getInt(0) != toSlotKey(key)) {
+            return null;
+        }
+        slice.position(SLOT_HEADER_SIZE);
+        Bitmap icon = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        icon.copyPixelsFromBuffer(slice);
+        if (BitmapRenderer.USE_HARDWARE_BITMAP && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Bitmap hardware = icon.copy(Bitmap.Config.HARDWARE, false);
+            if (hardware != null) {
+                icon.recycle();
+                icon = hardware;
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Drops all the icons.
+     */
+    public void clear() {
+        close();
+        mUsedSlots.clear();
+        mFile.delete();
+    }
+
+    public void close() {
+        if (mRaf != null) {
+            try {
+                mRaf.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        mRaf = null;
+        mBuffer = null;
+        mCapacity = 0;
+    }
+
+    private static int toSlotKey(int key) {
+        // 0 marks an invalid slot
+        return key == 0 ? 1 : key;
+    }
+
+    private ByteBuffer getSlot(int slot) {
+        ByteBuffer slice = mBuffer.duplicate().order(ByteOrder.nativeOrder());
+        int start = slot * mSlotSize;
+        slice.limit(start + mSlotSize).position(start);
+        return slice.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private boolean ensureOpen() {
+        if (mBuffer != null) {
+            return true;
+        }
+        try {
+            mRaf = new RandomAccessFile(mFile, "rw");
+            return map((int) (mRaf.length() / mSlotSize));
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open icon store", e);
+            close();
+            return false;
+        }
+    }
+
+    private boolean ensureCapacity(int slotCount) {
+        if (!ensureOpen()) {
+            return false;
+        }
+        if (slotCount <= mCapacity) {
+            return true;
+        }
+        // Free slots are reused first, so the file only grows by the slots actually needed
+        int capacity = (slotCount + GROW_SLOT_COUNT - 1) / GROW_SLOT_COUNT * GROW_SLOT_COUNT;
+        long length = (long) mCapacity * mSlotSize;
+        try {
+            allocate(length, (long) capacity * mSlotSize);
+            return map(capacity);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to grow icon store", e);
+            try {
+                // Drop the blocks which were allocated, the mapped part is unchanged
+                mRaf.setLength(length);
+            } catch (IOException ignored) {
+                // Ignore
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Writes zeros in the file from {@param start} to {@param end}.
+     */
+    private void allocate(long start, long end) throws IOException {
+        FileChannel channel = mRaf.getChannel();
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(ALLOCATE_CHUNK_SIZE, end - start));
+        long position = start;
+        while (position < end) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), end - position));
+            while (zeros.hasRemaining()) {
+                position += channel.write(zeros, position);
+            }
+        }
+    }
+
+    private boolean map(int capacity) throws IOException {
+        mCapacity = capacity;
+        mBuffer = mRaf.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0, (long) capacity * mSlotSize);
+        return true;
+    }
+}
@@ -239,7 +239,7 @@ public class IconCacheUpdateHandler {
         queryBuilder.append(')');
 
         if (deleteCount > 0) {
-            mIconCache.mIconDb.delete(queryBuilder.toString(), null);
+            mIconCache.deleteEntries(queryBuilder.toString(), null);
         }
     }
 
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.icons.cache.BaseIconCache.CacheEntry;
+import com.android.launcher3.util.ComponentKey;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * In-memory part of {@link BaseIconCache}, bounded by the byte size of the icons it holds.
+ *
+ * Entries are evicted in least recently used order, except for pinned entries, which are
+ * kept until they are removed explicitly:
+ * - the entries of the keys set with {@link #setPinnedKeys}, typically the apps on the
+ *   workspace and hotseat
+ * - the entries added with {@link #put(ComponentKey, CacheEntry, boolean)}, which can't be
+ *   loaded again from the DB
+ *
+ * This class is not thread safe, it is accessed under the {@link BaseIconCache} lock.
+ */
+public class IconMemoryCache {
+
+    // Rough size of an entry without its icon: key, title and content description
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final boolean mEnabled;
+    private final LruCache<ComponentKey, SizedEntry> mLru;
+
+    private final HashMap<ComponentKey, CacheEntry> mPinned = new HashMap<>();
+    private final HashSet<ComponentKey> mAlwaysPinnedKeys = new HashSet<>();
+    private Set<ComponentKey> mPinnedKeys = Collections.emptySet();
+
+    private int mPinnedHitCount;
+
+    /**
+     * @param enabled false to not keep any entry in memory
+     * @param maxSizeBytes max size of the entries which aren't pinned
+     */
+    public IconMemoryCache(boolean enabled, int maxSizeBytes) {
+        mEnabled = enabled;
+        mLru = new LruCache<ComponentKey, SizedEntry>(Math.max(1, maxSizeBytes)) {
+            @Override
+            protected int sizeOf(ComponentKey key, SizedEntry value) {
+                return value.sizeBytes;
+            }
+        };
+    }
+
+    @Nullable
+    public CacheEntry get(ComponentKey key) {
+        if (!mEnabled) {
+            return null;
+        }
+        CacheEntry entry = mPinned.get(key);
+        if (entry != null) {
+            mPinnedHitCount++;
+            return entry;
+        }
+        SizedEntry value = mLru.get(key);
+        return value == null ? null : value.entry;
+    }
+
+    public void put(ComponentKey key, CacheEntry entry) {
+        put(key, entry, false /* alwaysPin */);
+    }
+
+    /**
+     * Adds {@param entry}, which is never evicted if {@param alwaysPin} is true.
+     */
+    public void put(ComponentKey key, CacheEntry entry, boolean alwaysPin) {
+        if (!mEnabled) {
+            return;
+        }
+        if (alwaysPin) {
+            mAlwaysPinnedKeys.add(key);
+        }
+        if (isPinned(key)) {
+            mLru.remove(key);
+            mPinned.put(key, entry);
+        } else {
+            mLru.put(key, new SizedEntry(entry));
+        }
+    }
+
+    public void remove(ComponentKey key) {
+        mAlwaysPinnedKeys.remove(key);
+        mPinned.remove(key);
+        mLru.remove(key);
+    }
+
+    /**
+     * Removes all the entries whose key matches {@param filter}.
+     */
+    public void removeIf(Predicate<ComponentKey> filter) {
+        mAlwaysPinnedKeys.removeIf(filter);
+        mPinned.keySet().removeIf(filter);
+        for (ComponentKey key : mLru.snapshot().keySet()) {
+            if (filter.test(key)) {
+                mLru.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        mAlwaysPinnedKeys.clear();
+        mPinned.clear();
+        mLru.evictAll();
+    }
+
+    /**
+     * Sets the keys whose entries should not be evicted, replacing the previous ones.
+     */
+    public void setPinnedKeys(Set<ComponentKey> keys) {
+        mPinnedKeys = new HashSet<>(keys);
+        ArrayList<ComponentKey> unpinned = new ArrayList<>();
+        for (ComponentKey key : mPinned.keySet()) {
+            if (!isPinned(key)) {
+                unpinned.add(key);
+            }
+        }
+        for (ComponentKey key : unpinned) {
+            mLru.put(key, new SizedEntry(mPinned.remove(key)));
+        }
+        for (ComponentKey key : mPinnedKeys) {
+            SizedEntry value = mLru.remove(key);
+            if (value != null) {
+                mPinned.put(key, value.entry);
+            }
+        }
+    }
+
+    /**
+     * Releases the entries which aren't pinned, depending on {@param level} as defined in
+     * {@link android.content.ComponentCallbacks2}.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            mLru.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            mLru.trimToSize(mLru.maxSize() / 4);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            mLru.trimToSize(mLru.maxSize() / 2);
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        int pinnedSize = 0;
+        for (CacheEntry entry : mPinned.values()) {
+            pinnedSize += getSizeBytes(entry);
+        }
+        writer.println(prefix + "IconMemoryCache:"
+                + " enabled=" + mEnabled
+                + " size=" + mLru.size() + "/" + mLru.maxSize() + " bytes"
+                + " pinnedSize=" + pinnedSize + " bytes"
+                + " entries=" + mLru.snapshot().size()
+                + " pinnedEntries=" + mPinned.size());
+        writer.println(prefix + "  hits=" + mLru.hitCount()
+                + " pinnedHits=" + mPinnedHitCount
+                + " misses=" + mLru.missCount()
+                + " evictions=" + mLru.evictionCount());
+    }
+
+    private boolean isPinned(ComponentKey key) {
+        return mPinnedKeys.contains(key) || mAlwaysPinnedKeys.contains(key);
+    }
+
+    private static int getSizeBytes(CacheEntry entry) {
+        Bitmap icon = entry.bitmap == null ? null : entry.bitmap.icon;
+        return ENTRY_OVERHEAD_BYTES + (icon == null ? 0 : icon.getAllocationByteCount());
+    }
+
+    /**
+     * Entry with its size when it was added, as entries can be filled after being added.
+     */
+    private static class SizedEntry {
+
+        final CacheEntry entry;
+        final int sizeBytes;
+
+        SizedEntry(CacheEntry entry) {
+            this.entry = entry;
+            sizeBytes = getSizeBytes(entry);
+        }
+    }
+}
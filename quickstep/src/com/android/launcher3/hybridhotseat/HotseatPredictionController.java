@@ -49,6 +49,7 @@ import com.android.launcher3.logger.LauncherAtom.ContainerInfo;
 import com.android.launcher3.logger.LauncherAtom.PredictedHotseatContainer;
 import com.android.launcher3.logging.InstanceId;
 import com.android.launcher3.model.BgDataModel.FixedContainerItems;
+import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.popup.SystemShortcut;
@@ -58,10 +59,14 @@ import com.android.launcher3.uioverrides.QuickstepLauncher;
 import com.android.launcher3.util.OnboardingPrefs;
 import com.android.launcher3.views.ArrowTipView;
 import com.android.launcher3.views.Snackbar;
+import com.saggitt.omega.allapps.AppUsageIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -82,8 +87,12 @@ public class HotseatPredictionController implements DragController.DragListener,
     private QuickstepLauncher mLauncher;
     private final Hotseat mHotseat;
     private final Runnable mUpdateFillIfNotLoading = this::updateFillIfNotLoading;
+    private final Runnable mOnUsageChanged = this::onUsageChanged;
 
     private List<ItemInfo> mPredictedItems = Collections.emptyList();
+    // Last items provided by the system, empty ones are replaced by the usage predictions
+    private FixedContainerItems mSystemItems;
+    private boolean mUsingUsagePredictions;
 
     private AnimatorSet mIconRemoveAnimators;
     private int mPauseFlags = 0;
@@ -121,6 +130,7 @@ public class HotseatPredictionController implements DragController.DragListener,
 
         launcher.addOnDeviceProfileChangeListener(this);
         mHotseat.getShortcutsAndWidgets().setOnHierarchyChangeListener(this);
+        AppUsageIndex.INSTANCE.get(mLauncher).addChangeListener(mOnUsageChanged);
     }
 
     @Override
@@ -283,6 +293,7 @@ public class HotseatPredictionController implements DragController.DragListener,
      */
     public void destroy() {
         mLauncher.removeOnDeviceProfileChangeListener(this);
+        AppUsageIndex.INSTANCE.get(mLauncher).removeChangeListener(mOnUsageChanged);
     }
 
     /**
@@ -301,6 +312,7 @@ public class HotseatPredictionController implements DragController.DragListener,
      * Sets or updates the predicted items
      */
     public void setPredictedItems(FixedContainerItems items) {
+        mSystemItems = items;
         boolean shouldIgnoreVisibility = FeatureFlags.ENABLE_APP_PREDICTIONS_WHILE_VISIBLE.get()
                 || mLauncher.isWorkspaceLoading()
                 || mPredictedItems.equals(items.items)
@@ -328,12 +340,61 @@ public class HotseatPredictionController implements DragController.DragListener,
      */
     private void applyPredictedItems(FixedContainerItems items) {
         mPredictedItems = items.items;
+        mUsingUsagePredictions = mPredictedItems.isEmpty();
+        if (mUsingUsagePredictions) {
+            mPredictedItems = getUsagePredictions();
+        }
         if (mPredictedItems.isEmpty()) {
             HotseatRestoreHelper.restoreBackup(mLauncher);
         }
         fillGapsWithPrediction();
     }
 
+    /**
+     * Recomputes the usage predictions when they are shown in place of the system ones, as the
+     * system doesn't update empty predictions when apps are launched.
+     */
+    private void onUsageChanged() {
+        if (mUsingUsagePredictions && mSystemItems != null && mSystemItems.items.isEmpty()) {
+            setPredictedItems(mSystemItems);
+        }
+    }
+
+    /**
+     * Ranks the apps by their recent, time of day weighted usage. Used when the system doesn't
+     * provide any hotseat predictions.
+     */
+    private List<ItemInfo> getUsagePredictions() {
+        AppUsageIndex usageIndex = AppUsageIndex.INSTANCE.get(mLauncher);
+        if (!usageIndex.isLoaded()) {
+            return Collections.emptyList();
+        }
+        List<AppInfo> apps = new ArrayList<>(
+                Arrays.asList(mLauncher.getAppsView().getAppsStore().getApps()));
+        usageIndex.sortByRecentUsage(apps);
+
+        Set<ComponentName> pinnedComponents = new HashSet<>();
+        ViewGroup vg = mHotseat.getShortcutsAndWidgets();
+        for (int i = 0; i < vg.getChildCount(); i++) {
+            View child = vg.getChildAt(i);
+            if (!isPredictedIcon(child) && child.getTag() instanceof ItemInfo) {
+                pinnedComponents.add(((ItemInfo) child.getTag()).getTargetComponent());
+            }
+        }
+
+        List<ItemInfo> predictions = new ArrayList<>();
+        for (AppInfo app : apps) {
+            if (predictions.size() >= mHotSeatItemsCount
+                    || !usageIndex.hasUsage(app.componentName.getPackageName())) {
+                break;
+            }
+            if (!pinnedComponents.contains(app.componentName)) {
+                predictions.add(app.makeWorkspaceItem());
+            }
+        }
+        return predictions;
+    }
+
     /**
      * Pins a predicted app icon into place.
      */
@@ -36,6 +36,7 @@ import com.android.launcher3.model.data.WorkspaceItemInfo;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -82,13 +83,11 @@ public class PredictionUpdateTask extends BaseModelUpdateTask {
                 }
                 ComponentName cn = new ComponentName(target.getPackageName(), className);
                 UserHandle user = target.getUser();
-                itemInfo = apps.data.stream()
-                        .filter(info -> user.equals(info.user) && cn.equals(info.componentName))
+                itemInfo = Optional.ofNullable(apps.findAppInfo(cn, user))
                         .map(ai -> {
                             app.getIconCache().getTitleAndIcon(ai, false);
                             return ai.makeWorkspaceItem();
                         })
-                        .findAny()
                         .orElseGet(() -> {
                             LauncherActivityInfo lai = context.getSystemService(LauncherApps.class)
                                     .resolveActivity(AppInfo.makeLaunchIntent(cn), user);
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps.search;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ComponentName;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Robolectric unit tests for {@link AppSearchIndex}, checking that it matches exactly the
+ * same titles as {@link StringMatcherUtility#matches}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AppSearchIndexTest {
+
+    private static final List<String> TITLES = Arrays.asList(
+            "white cow", "whiteCow", "whiteCOW", "whitecowCOW", "white2cow", "whitecow",
+            "whitEcow", "whitecowCow", "whitecow cow", "whitecowcow", "whit ecowcow",
+            "cats&dogs", "cats&Dogs", "2+43", "Q", "  Q", "elephant", "Elephant", "Bot",
+            "电子邮件", "다운로드", "드라이브", "다운로드 드라이브", "운로 드라이브", "로드라이브",
+            "abc", "Alpha", "Ångström", "Éclair", "Zoë's Café", "Google Play Store",
+            "YouTube Music", "K-9 Mail", "S Health", "1Password", "Files by Google", "", "a");
+
+    private static final List<String> QUERIES = Arrays.asList(
+            "white ", "white c", "cow", "dog", "&", "43", "3", "q", "e", "eL", "电", "电子",
+            "子", "邮件", "ba", "phant", "elephants", "다", "드", "ㄷ", "ㄷㄷ", "åbç", "ål",
+            "åç", "ang", "ång", "eclair", "éc", "zoe", "cafe", "'s", "play", "p", "store",
+            "tube", "music", "9", "k-9", "mail", "health", "pass", "1", "by", "g", "a", "Z",
+            " ", "-", "+");
+
+    @Test
+    public void matches_sameAsStringMatcher() {
+        StringMatcher matcher = StringMatcher.getInstance();
+        for (String title : TITLES) {
+            for (String query : getQueries()) {
+                boolean expected = !query.isEmpty() && StringMatcherUtility.matches(
+                        query.toLowerCase(), title, matcher);
+                assertEquals("query=\"" + query + "\" title=\"" + title + "\"",
+                        expected, indexMatches(title, query));
+            }
+        }
+    }
+
+    @Test
+    public void search_keepsOrderAndLimit() {
+        List<AppInfo> apps = createApps("Camera", "Calendar", "Clock", "Calculator",
+                "Contacts", "Chrome", "Maps", "Call Recorder");
+        List<AppInfo> result = new ArrayList<>();
+
+        new AppSearchIndex().search(apps, "ca", 5, result);
+
+        assertEquals(Arrays.asList(apps.get(0), apps.get(1), apps.get(3), apps.get(7)),
+                result);
+
+        result.clear();
+        new AppSearchIndex().search(apps, "c", 5, result);
+        assertEquals(apps.subList(0, 5), result);
+    }
+
+    @Test
+    public void search_updatesChangedTitles() {
+        List<AppInfo> apps = createApps("Camera");
+        AppSearchIndex index = new AppSearchIndex();
+        List<AppInfo> result = new ArrayList<>();
+
+        index.search(apps, "cam", 5, result);
+        assertEquals(apps, result);
+
+        apps.get(0).title = "Gallery";
+        result.clear();
+        index.search(apps, "cam", 5, result);
+        assertEquals(Collections.emptyList(), result);
+
+        result.clear();
+        index.search(apps, "gal", 5, result);
+        assertEquals(apps, result);
+    }
+
+    /**
+     * Returns the queries plus every prefix of every title, and their upper case forms.
+     */
+    private static Set<String> getQueries() {
+        Set<String> queries = new LinkedHashSet<>(QUERIES);
+        for (String title : TITLES) {
+            for (int i = 1; i <= title.length(); i++) {
+                queries.add(title.substring(0, i));
+                queries.add(title.substring(title.length() - i));
+            }
+        }
+        for (String query : new ArrayList<>(queries)) {
+            queries.add(query.toUpperCase());
+        }
+        return queries;
+    }
+
+    private static boolean indexMatches(String title, String query) {
+        List<AppInfo> result = new ArrayList<>();
+        new AppSearchIndex().search(createApps(title), query, 1, result);
+        return !result.isEmpty();
+    }
+
+    private static List<AppInfo> createApps(String... titles) {
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < titles.length; i++) {
+            AppInfo info = new AppInfo();
+            info.componentName = new ComponentName("com.example.app" + i, "Activity");
+            info.title = titles[i];
+            apps.add(info);
+        }
+        return apps;
+    }
+}
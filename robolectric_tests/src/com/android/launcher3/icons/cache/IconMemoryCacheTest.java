@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.UserHandle;
+
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.cache.BaseIconCache.CacheEntry;
+import com.android.launcher3.util.ComponentKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Collections;
+
+/**
+ * Robolectric unit tests for {@link IconMemoryCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IconMemoryCacheTest {
+
+    private static final int ICON_SIZE = 10;
+
+    private IconMemoryCache mCache;
+    private int mEntrySize;
+
+    @Before
+    public void setUp() {
+        mEntrySize = newEntry().bitmap.icon.getAllocationByteCount() + 256;
+        // Room for 3 entries
+        mCache = new IconMemoryCache(true, mEntrySize * 3 + mEntrySize / 2);
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        CacheEntry a = put("a");
+        put("b");
+        put("c");
+        // Makes b the least recently used
+        mCache.get(key("a"));
+        mCache.get(key("c"));
+
+        put("d");
+
+        assertSame(a, mCache.get(key("a")));
+        assertNull(mCache.get(key("b")));
+        assertNotNull(mCache.get(key("c")));
+        assertNotNull(mCache.get(key("d")));
+    }
+
+    @Test
+    public void setPinnedKeys_keepsEntriesOverLimit() {
+        CacheEntry a = put("a");
+        mCache.setPinnedKeys(Collections.singleton(key("a")));
+
+        put("b");
+        put("c");
+        put("d");
+        put("e");
+
+        assertSame(a, mCache.get(key("a")));
+        assertNull(mCache.get(key("b")));
+    }
+
+    @Test
+    public void onTrimMemory_keepsPinnedEntries() {
+        CacheEntry a = put("a");
+        mCache.put(key("b"), newEntry(), true /* alwaysPin */);
+        put("c");
+        mCache.setPinnedKeys(Collections.singleton(key("a")));
+
+        mCache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+
+        assertSame(a, mCache.get(key("a")));
+        assertNotNull(mCache.get(key("b")));
+        assertNull(mCache.get(key("c")));
+    }
+
+    @Test
+    public void setPinnedKeys_releasesPreviousKeys() {
+        put("a");
+        mCache.setPinnedKeys(Collections.singleton(key("a")));
+        mCache.setPinnedKeys(Collections.emptySet());
+
+        mCache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+
+        assertNull(mCache.get(key("a")));
+    }
+
+    @Test
+    public void removeIf_removesPinnedEntries() {
+        put("a");
+        put("b");
+        mCache.setPinnedKeys(Collections.singleton(key("a")));
+
+        mCache.removeIf(k -> true);
+
+        assertNull(mCache.get(key("a")));
+        assertNull(mCache.get(key("b")));
+    }
+
+    private CacheEntry put(String className) {
+        CacheEntry entry = newEntry();
+        mCache.put(key(className), entry);
+        return entry;
+    }
+
+    private static ComponentKey key(String className) {
+        return new ComponentKey(new ComponentName("com.example", className), UserHandle.of(0));
+    }
+
+    private static CacheEntry newEntry() {
+        CacheEntry entry = new CacheEntry();
+        entry.bitmap = BitmapInfo.of(
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888), Color.RED);
+        return entry;
+    }
+}
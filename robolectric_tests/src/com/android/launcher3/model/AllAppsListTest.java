@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import android.content.ComponentName;
+import android.os.UserHandle;
+
+import com.android.launcher3.AppFilter;
+import com.android.launcher3.icons.IconCache;
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Robolectric unit tests for the component and package lookups of {@link AllAppsList}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AllAppsListTest {
+
+    private static final UserHandle MAIN_USER = UserHandle.of(0);
+    private static final UserHandle WORK_USER = UserHandle.of(10);
+
+    private AllAppsList mAllAppsList;
+
+    @Before
+    public void setUp() {
+        mAllAppsList = new AllAppsList(mock(IconCache.class), new AppFilter());
+    }
+
+    @Test
+    public void add_findsAppByComponentAndUser() {
+        AppInfo main = add("com.example.a", "Main", MAIN_USER);
+        AppInfo work = add("com.example.a", "Main", WORK_USER);
+
+        assertSame(main, mAllAppsList.findAppInfo(main.componentName, MAIN_USER));
+        assertSame(work, mAllAppsList.findAppInfo(main.componentName, WORK_USER));
+        assertNull(mAllAppsList.findAppInfo(
+                new ComponentName("com.example.a", "Other"), MAIN_USER));
+    }
+
+    @Test
+    public void add_ignoresDuplicates() {
+        AppInfo first = add("com.example.a", "Main", MAIN_USER);
+        add("com.example.a", "Main", MAIN_USER);
+
+        assertEquals(Arrays.asList(first), mAllAppsList.data);
+    }
+
+    @Test
+    public void removePackage_removesOnlyThatPackageAndUser() {
+        add("com.example.a", "Main", MAIN_USER);
+        add("com.example.a", "Second", MAIN_USER);
+        AppInfo other = add("com.example.b", "Main", MAIN_USER);
+        AppInfo work = add("com.example.a", "Main", WORK_USER);
+        List<AppInfo> removed = new ArrayList<>();
+        mAllAppsList.trackRemoves(removed::add);
+
+        mAllAppsList.removePackage("com.example.a", MAIN_USER);
+
+        assertEquals(Arrays.asList(other, work), mAllAppsList.data);
+        assertEquals(2, removed.size());
+        assertNull(mAllAppsList.findAppInfo(
+                new ComponentName("com.example.a", "Main"), MAIN_USER));
+        assertSame(work, mAllAppsList.findAppInfo(work.componentName, WORK_USER));
+    }
+
+    @Test
+    public void copyData_isSortedAndReflectsChanges() {
+        AppInfo b = add("com.example.b", "Main", MAIN_USER);
+        AppInfo a = add("com.example.a", "Main", MAIN_USER);
+
+        AppInfo[] first = mAllAppsList.copyData();
+        assertEquals(Arrays.asList(a, b), Arrays.asList(first));
+        assertNotSame(first, mAllAppsList.copyData());
+
+        mAllAppsList.removePackage("com.example.a", MAIN_USER);
+        AppInfo c = add("com.example.c", "Main", MAIN_USER);
+        assertEquals(Arrays.asList(b, c), Arrays.asList(mAllAppsList.copyData()));
+    }
+
+    private AppInfo add(String packageName, String className, UserHandle user) {
+        AppInfo info = new AppInfo();
+        info.componentName = new ComponentName(packageName, className);
+        info.user = user;
+        info.title = className;
+        mAllAppsList.add(info, null);
+        return info;
+    }
+}
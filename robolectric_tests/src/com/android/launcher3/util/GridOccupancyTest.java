@@ -52,13 +52,73 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testIsRegionVacant_afterMarkCells() {
+        GridOccupancy grid = initGrid(3,
+                0, 0, 0, 0,
+                0, 0, 0, 0,
+                0, 0, 0, 0
+        );
+
+        grid.markCells(1, 1, 2, 2, true);
+        assertFalse(grid.isRegionVacant(0, 0, 2, 2));
+        assertTrue(grid.isRegionVacant(0, 0, 4, 1));
+        assertTrue(grid.isRegionVacant(3, 0, 1, 3));
+
+        grid.markCells(1, 1, 1, 2, false);
+        assertTrue(grid.isRegionVacant(0, 0, 2, 3));
+        assertFalse(grid.isRegionVacant(2, 2, 1, 1));
+
+        grid.clear();
+        assertTrue(grid.isRegionVacant(0, 0, 4, 3));
+        assertFalse(grid.isRegionVacant(1, 1, 4, 1));
+    }
+
+    @Test
+    public void testCopyTo() {
+        GridOccupancy grid = initGrid(2,
+                1, 0, 1,
+                0, 1, 0
+        );
+        GridOccupancy dest = initGrid(2,
+                0, 1, 0,
+                1, 0, 1
+        );
+
+        grid.copyTo(dest);
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 2; y++) {
+                assertEquals(grid.isOccupied(x, y), dest.isOccupied(x, y));
+            }
+        }
+        assertFalse(dest.isRegionVacant(0, 0, 1, 1));
+        assertTrue(dest.isRegionVacant(1, 0, 1, 1));
+    }
+
+    @Test
+    public void testOverlaps() {
+        GridOccupancy grid = initGrid(3,
+                1, 0, 0, 0,
+                0, 0, 0, 0,
+                0, 0, 0, 1
+        );
+        GridOccupancy block = initGrid(2,
+                0, 1,
+                1, 1
+        );
+
+        assertFalse(grid.overlaps(block, 0, 0, 2, 2));
+        assertTrue(grid.overlaps(block, 2, 1, 2, 2));
+        assertFalse(grid.overlaps(block, 1, 1, 2, 2));
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
@@ -17,8 +17,12 @@ package com.android.launcher3.widget;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static com.android.launcher3.widget.WidgetPreviewLoader.PRIORITY_VISIBLE;
+
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -86,7 +90,8 @@ public class CachingWidgetPreviewLoaderTest {
         mTestActivity = Robolectric.buildActivity(TestActivity.class).setup().get();
         mTestActivity.setDeviceProfile(mDeviceProfile);
 
-        when(mDelegate.loadPreview(any(), any(), any(), any())).thenReturn(mCancellationSignal);
+        when(mDelegate.loadPreview(any(), any(), any(), any(), anyInt()))
+                .thenReturn(mCancellationSignal);
 
         mProviderInfo.provider = TEST_PROVIDER;
         when(mProviderInfo.getProfile()).thenReturn(new UserHandle(0));
@@ -148,14 +153,15 @@ public class CachingWidgetPreviewLoaderTest {
     public void loadPreview_notInCache_shouldStartLoading() {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
 
-        verify(mDelegate).loadPreview(eq(mTestActivity), eq(mWidgetItem), eq(SIZE_10_10), any());
+        verify(mDelegate).loadPreview(eq(mTestActivity), eq(mWidgetItem), eq(SIZE_10_10), any(),
+                eq(PRIORITY_VISIBLE));
         verifyZeroInteractions(mPreviewLoadedCallback);
     }
 
     @Test
     public void loadPreview_thenLoaded_shouldCallBack() {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         loaderCallback.onPreviewLoaded(BITMAP);
@@ -191,7 +197,7 @@ public class CachingWidgetPreviewLoaderTest {
         CancellationSignal cancellationSignal1 =
                 mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback2);
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         cancellationSignal1.cancel();
@@ -224,7 +230,7 @@ public class CachingWidgetPreviewLoaderTest {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback2);
 
-        verify(mDelegate).loadPreview(any(), any(), any(), any());
+        verify(mDelegate).loadPreview(any(), any(), any(), any(), anyInt());
     }
 
     @Test
@@ -232,7 +238,7 @@ public class CachingWidgetPreviewLoaderTest {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback2);
 
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         loaderCallback.onPreviewLoaded(BITMAP);
@@ -256,7 +262,7 @@ public class CachingWidgetPreviewLoaderTest {
     public void loadPreview_thenLoaded_thenCancelled_shouldNotRemovePreviewFromCache() {
         CancellationSignal cancellationSignal =
                 mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
         loaderCallback.onPreviewLoaded(BITMAP);
 
@@ -398,10 +404,43 @@ public class CachingWidgetPreviewLoaderTest {
         verify(mCancellationSignal).cancel();
     }
 
+    @Test
+    public void prefetchPreview_thenLoaded_shouldStorePreview() {
+        mLoader.prefetchPreview(mTestActivity, mWidgetItem, SIZE_10_10, 1);
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
+
+        mCallbackCaptor.getValue().onPreviewLoaded(BITMAP);
+
+        assertThat(mLoader.getPreview(mWidgetItem, SIZE_10_10)).isEqualTo(BITMAP);
+    }
+
+    @Test
+    public void prefetchPreview_thenLoadPreview_prefetchCancelled_shouldCallBack() {
+        CancellationSignal prefetchSignal =
+                mLoader.prefetchPreview(mTestActivity, mWidgetItem, SIZE_10_10, 1);
+        mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
+
+        prefetchSignal.cancel();
+        mCallbackCaptor.getValue().onPreviewLoaded(BITMAP);
+
+        verify(mCancellationSignal, never()).cancel();
+        verify(mPreviewLoadedCallback).onPreviewLoaded(BITMAP);
+    }
+
+    @Test
+    public void prefetchPreview_thenLoadPreview_shouldRaisePriority() {
+        mLoader.prefetchPreview(mTestActivity, mWidgetItem, SIZE_10_10, 3);
+        mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
+
+        verify(mDelegate).loadPreview(any(), any(), any(), any(), eq(3));
+        verify(mDelegate).setPriority(mWidgetItem, SIZE_10_10, PRIORITY_VISIBLE);
+    }
+
     private void loadPreviewIntoCache(WidgetItem widgetItem, Size size, Bitmap bitmap) {
         reset(mDelegate);
         mLoader.loadPreview(mTestActivity, widgetItem, size, ignored -> {});
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         loaderCallback.onPreviewLoaded(bitmap);
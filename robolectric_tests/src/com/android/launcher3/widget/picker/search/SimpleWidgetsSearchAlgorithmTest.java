@@ -18,12 +18,15 @@ package com.android.launcher3.widget.picker.search;
 
 import static android.os.Looper.getMainLooper;
 
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.matches;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.robolectric.Shadows.shadowOf;
 
@@ -156,17 +159,47 @@ public class SimpleWidgetsSearchAlgorithmTest {
     }
 
     @Test
-    public void doSearch_shouldInformCallback() {
+    public void doSearch_shouldInformCallback() throws Exception {
         doReturn(List.of(mCalendarHeaderEntry, mCalendarContentEntry, mCameraHeaderEntry,
                 mCameraContentEntry, mClockHeaderEntry, mClockContentEntry))
                 .when(mDataProvider)
                 .getAllWidgets();
         mSimpleWidgetsSearchAlgorithm.doSearch("Ca", mSearchCallback);
+        UI_HELPER_EXECUTOR.submit(() -> null).get();
         shadowOf(getMainLooper()).idle();
         verify(mSearchCallback).onSearchResult(
                 matches("Ca"), argThat(a -> a != null && !a.isEmpty()));
     }
 
+    @Test
+    public void doSearch_newQuery_dropsPreviousResult() throws Exception {
+        doReturn(List.of(mCalendarHeaderEntry, mCalendarContentEntry, mCameraHeaderEntry,
+                mCameraContentEntry, mClockHeaderEntry, mClockContentEntry))
+                .when(mDataProvider)
+                .getAllWidgets();
+        mSimpleWidgetsSearchAlgorithm.doSearch("C", mSearchCallback);
+        mSimpleWidgetsSearchAlgorithm.doSearch("Cl", mSearchCallback);
+        UI_HELPER_EXECUTOR.submit(() -> null).get();
+        shadowOf(getMainLooper()).idle();
+
+        verify(mSearchCallback).onSearchResult(
+                matches("Cl"), argThat(a -> a != null && a.size() == 2));
+        verify(mSearchCallback, never()).onSearchResult(matches("C"), any());
+    }
+
+    @Test
+    public void doSearch_cancelled_shouldNotInformCallback() throws Exception {
+        doReturn(List.of(mCalendarHeaderEntry, mCalendarContentEntry))
+                .when(mDataProvider)
+                .getAllWidgets();
+        mSimpleWidgetsSearchAlgorithm.doSearch("Ca", mSearchCallback);
+        mSimpleWidgetsSearchAlgorithm.cancel(/* interruptActiveRequests= */ true);
+        UI_HELPER_EXECUTOR.submit(() -> null).get();
+        shadowOf(getMainLooper()).idle();
+
+        verify(mSearchCallback, never()).onSearchResult(any(), any());
+    }
+
     private WidgetsListHeaderEntry createWidgetsHeaderEntry(String packageName, String appName,
             int numOfWidgets) {
         List<WidgetItem> widgetItems = generateWidgetItems(packageName, numOfWidgets);
@@ -0,0 +1,205 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.saggitt.omega.allapps;
+
+import static com.saggitt.omega.allapps.AppColorComparator.REPETITIONS;
+import static com.saggitt.omega.allapps.AppColorComparator.remap;
+import static com.saggitt.omega.allapps.AppColorComparator.remapHue;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Process;
+import android.os.UserHandle;
+
+import androidx.core.graphics.ColorUtils;
+
+import com.android.launcher3.allapps.AppInfoComparator;
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.pm.UserCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Robolectric unit tests for {@link AppColorComparator}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AppColorComparatorTest {
+
+    private static final String[] TITLES = {"Camera", "calendar", "Äpfel", "apps", "1Password",
+            "_hidden", "Zoom", "Maps", "maps", "Éclair", "", "Mail", "Clock", "Calculator"};
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void colorSortKey_matchesHslComparison() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            int a = random.nextInt() | 0xFF000000;
+            int b = random.nextInt() | 0xFF000000;
+            assertEquals(Integer.signum(compareHsl(a, b)), Integer.signum(
+                    Integer.compare(AppColorComparator.getColorSortKey(a),
+                            AppColorComparator.getColorSortKey(b))));
+        }
+    }
+
+    @Test
+    public void sort_matchesLegacyOrder() {
+        Random random = new Random(42);
+        int[] palette = {Color.RED, Color.BLUE, Color.GREEN, Color.BLACK, Color.WHITE,
+                Color.YELLOW, 0xFF3DDC84, 0xFF4285F4};
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            AppInfo info = new AppInfo(new ComponentName("com.example.app" + i, "Main"),
+                    TITLES[random.nextInt(TITLES.length)], Process.myUserHandle(), null);
+            info.iconColor = random.nextBoolean()
+                    ? palette[random.nextInt(palette.length)]
+                    : random.nextInt() | 0xFF000000;
+            apps.add(info);
+        }
+        Collections.shuffle(apps, random);
+
+        List<AppInfo> expected = new ArrayList<>(apps);
+        expected.sort(new LegacyColorComparator(mContext));
+        apps.sort(new AppColorComparator(mContext));
+        assertEquals(expected, apps);
+    }
+
+    @Test
+    public void sort_usesUpdatedColorAndTitle() {
+        AppInfo first = new AppInfo(new ComponentName("com.example.a", "Main"), "A",
+                Process.myUserHandle(), null);
+        AppInfo second = new AppInfo(new ComponentName("com.example.b", "Main"), "B",
+                Process.myUserHandle(), null);
+        first.iconColor = Color.RED;
+        second.iconColor = Color.RED;
+
+        AppColorComparator comparator = new AppColorComparator(mContext);
+        List<AppInfo> apps = new ArrayList<>(Arrays.asList(second, first));
+        apps.sort(comparator);
+        assertEquals(first, apps.get(0));
+
+        first.title = "C";
+        apps.sort(comparator);
+        assertEquals(second, apps.get(0));
+
+        second.iconColor = Color.BLUE;
+        apps.sort(comparator);
+        assertEquals(first, apps.get(0));
+    }
+
+    private static int compareHsl(int colorA, int colorB) {
+        float[] hslA = new float[3];
+        float[] hslB = new float[3];
+        ColorUtils.colorToHSL(colorA, hslA);
+        ColorUtils.colorToHSL(colorB, hslB);
+        int h2A = remapHue(hslA[0]);
+        int h2B = remapHue(hslB[0]);
+        int s2A = remap(hslA[1]);
+        int s2B = remap(hslB[1]);
+        int l2A = remap(hslA[2]);
+        int l2B = remap(hslB[2]);
+        if (h2A % 2 == 1) {
+            s2A = REPETITIONS - s2A;
+            l2A = REPETITIONS - l2A;
+        }
+        if (h2B % 2 == 1) {
+            s2B = REPETITIONS - s2B;
+            l2B = REPETITIONS - l2B;
+        }
+        int result = Integer.compare(h2A, h2B);
+        if (result != 0) {
+            return result;
+        }
+        result = Integer.compare(l2A, l2B);
+        if (result != 0) {
+            return result;
+        }
+        return Integer.compare(s2A, s2B);
+    }
+
+    /**
+     * The comparator as it was before the sort keys were cached, including the title and user
+     * comparison it inherited, so that it doesn't change with {@link AppInfoComparator}.
+     */
+    private static class LegacyColorComparator implements Comparator<AppInfo> {
+
+        private final UserCache mUserManager;
+        private final UserHandle mMyUser = Process.myUserHandle();
+        private final Collator mCollator = Collator.getInstance();
+
+        LegacyColorComparator(Context context) {
+            mUserManager = UserCache.INSTANCE.get(context);
+        }
+
+        @Override
+        public int compare(AppInfo a, AppInfo b) {
+            int result = compareHsl(a.iconColor, b.iconColor);
+            if (result != 0) {
+                return result;
+            }
+            result = compareLabels(a.title.toString(), b.title.toString());
+            if (result != 0) {
+                return result;
+            }
+            result = a.componentName.compareTo(b.componentName);
+            if (result != 0) {
+                return result;
+            }
+            if (mMyUser.equals(a.user)) {
+                return -1;
+            } else {
+                Long aUserSerial = mUserManager.getSerialNumberForUser(a.user);
+                Long bUserSerial = mUserManager.getSerialNumberForUser(b.user);
+                return aUserSerial.compareTo(bUserSerial);
+            }
+        }
+
+        private int compareLabels(String titleA, String titleB) {
+            boolean aStartsWithLetter = (titleA.length() > 0)
+                    && Character.isLetterOrDigit(titleA.codePointAt(0));
+            boolean bStartsWithLetter = (titleB.length() > 0)
+                    && Character.isLetterOrDigit(titleB.codePointAt(0));
+            if (aStartsWithLetter && !bStartsWithLetter) {
+                return -1;
+            } else if (!aStartsWithLetter && bStartsWithLetter) {
+                return 1;
+            }
+            return mCollator.compare(titleA, titleB);
+        }
+    }
+}
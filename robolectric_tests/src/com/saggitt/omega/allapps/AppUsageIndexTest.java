@@ -0,0 +1,115 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.saggitt.omega.allapps;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ComponentName;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Robolectric unit tests for {@link AppUsageIndex}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AppUsageIndexTest {
+
+    private static final List<AppCountInfo> COUNTS = Arrays.asList(
+            new AppCountInfo("com.example.mail", 12),
+            new AppCountInfo("com.example.maps", 3),
+            new AppCountInfo("com.example.camera", 12),
+            new AppCountInfo("com.example.music", 0),
+            new AppCountInfo("com.example.phone", 40));
+
+    @Test
+    public void sortByUsage_matchesComparator() {
+        List<AppInfo> apps = createApps("com.example.music", "com.example.mail",
+                "com.example.unknown", "com.example.phone", "com.example.camera",
+                "com.example.maps", "com.example.other");
+
+        assertSameOrder(apps);
+    }
+
+    @Test
+    public void sortByUsage_keepsOrderOfTies() {
+        List<AppInfo> apps = createApps("com.example.b", "com.example.a", "com.example.c");
+        List<AppInfo> expected = new ArrayList<>(apps);
+
+        new AppUsageIndex(COUNTS).sortByUsage(apps);
+        assertEquals(expected, apps);
+    }
+
+    @Test
+    public void sortByUsage_matchesComparatorForShuffledInput() {
+        Random random = new Random(42);
+        List<AppCountInfo> counts = new ArrayList<>();
+        String[] packages = new String[300];
+        for (int i = 0; i < packages.length; i++) {
+            packages[i] = "com.example.app" + i;
+            if (random.nextBoolean()) {
+                counts.add(new AppCountInfo(packages[i], random.nextInt(20)));
+            }
+        }
+        List<AppInfo> apps = createApps(packages);
+
+        List<AppInfo> expected = new ArrayList<>(apps);
+        expected.sort(new AppUsageComparator(counts));
+        new AppUsageIndex(counts).sortByUsage(apps);
+        assertEquals(expected, apps);
+    }
+
+    @Test
+    public void onAppLaunched_updatesOrder() {
+        AppUsageIndex index = new AppUsageIndex(COUNTS);
+        List<AppInfo> apps = createApps("com.example.phone", "com.example.maps");
+        for (int i = 0; i < 38; i++) {
+            index.onAppLaunched("com.example.maps");
+        }
+
+        index.sortByUsage(apps);
+        assertEquals("com.example.maps", apps.get(0).componentName.getPackageName());
+        assertEquals(41, index.getCount("com.example.maps"));
+    }
+
+    private static void assertSameOrder(List<AppInfo> apps) {
+        List<AppInfo> expected = new ArrayList<>(apps);
+        expected.sort(new AppUsageComparator(COUNTS));
+
+        new AppUsageIndex(COUNTS).sortByUsage(apps);
+        assertEquals(expected, apps);
+    }
+
+    private static List<AppInfo> createApps(String... packages) {
+        List<AppInfo> apps = new ArrayList<>();
+        for (String packageName : packages) {
+            AppInfo info = new AppInfo();
+            info.componentName = new ComponentName(packageName, packageName + ".Main");
+            apps.add(info);
+        }
+        return apps;
+    }
+}
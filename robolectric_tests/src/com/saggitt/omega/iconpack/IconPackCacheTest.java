@@ -0,0 +1,79 @@
+/*
+ *  This file is part of Omega Launcher
+ *  Copyright (c) 2021   Omega Launcher Team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.saggitt.omega.iconpack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.ComponentName;
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Robolectric unit tests for {@link IconPackCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IconPackCacheTest {
+
+    private static final String PACK = "com.example.iconpack";
+    private static final ComponentName MAIL = new ComponentName("com.example.mail", "Main");
+
+    private Context mContext;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        mFile = IconPackCache.getCacheFile(mContext, PACK);
+        new IconPackCache.Builder()
+                .addComponent(MAIL, new IconPackCache.CachedDrawable("mail", 1))
+                .addComponent(new ComponentName("com.example.maps", "Main"),
+                        new IconPackCache.CachedDrawable("maps", 2))
+                .write(mFile, 1, 2);
+    }
+
+    @Test
+    public void open_returnsWrittenComponents() {
+        IconPackCache cache = IconPackCache.open(mContext, PACK, 1, 2);
+
+        assertNotNull(cache);
+        assertEquals(new IconPackCache.CachedDrawable("mail", 1), cache.getComponent(MAIL));
+        assertNull(cache.getComponent(new ComponentName("com.example.other", "Main")));
+        assertEquals(1, mFile.getParentFile().listFiles().length);
+    }
+
+    @Test
+    public void open_truncatedFile_deletesCache() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        assertNull(IconPackCache.open(mContext, PACK, 1, 2));
+        assertFalse(mFile.exists());
+    }
+}
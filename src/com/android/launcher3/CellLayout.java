@@ -77,7 +77,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Stack;
 
 public class CellLayout extends ViewGroup {
     private static final String TAG = "CellLayout";
@@ -388,7 +387,7 @@ public class CellLayout extends ViewGroup {
         mCountY = y;
         mOccupied = new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
-        mTempRectStack.clear();
+        mTempRegions = null;
         mShortcutsAndWidgets.setCellDimensions(mCellWidth, mCellHeight, mCountX, mCountY,
                 mBorderSpacing);
         requestLayout();
@@ -459,7 +458,7 @@ public class CellLayout extends ViewGroup {
             cd.setBounds(0, 0, mCellWidth, mCellHeight);
             for (int i = 0; i < mCountX; i++) {
                 for (int j = 0; j < mCountY; j++) {
-                    if (mOccupied.cells[i][j]) {
+                    if (mOccupied.isOccupied(i, j)) {
                         cellToPoint(i, j, pt);
                         canvas.save();
                         canvas.translate(pt[0], pt[1]);
@@ -1138,19 +1137,15 @@ public class CellLayout extends ViewGroup {
                 result, resultSpan);
     }
 
-    private final Stack<Rect> mTempRectStack = new Stack<>();
-    private void lazyInitTempRectStack() {
-        if (mTempRectStack.isEmpty()) {
-            for (int i = 0; i < mCountX * mCountY; i++) {
-                mTempRectStack.push(new Rect());
-            }
-        }
-    }
+    // Bounds of the candidate regions of findNearestArea, as left, top, right, bottom
+    private int[] mTempRegions;
 
-    private void recycleTempRects(Stack<Rect> used) {
-        while (!used.isEmpty()) {
-            mTempRectStack.push(used.pop());
-        }
+    private static boolean regionContains(int[] regions, int index,
+            int left, int top, int right, int bottom) {
+        // Same as Rect.contains(Rect): an empty region contains nothing
+        int l = regions[index], t = regions[index + 1];
+        int r = regions[index + 2], b = regions[index + 3];
+        return l < r && t < b && l <= left && t <= top && r >= right && b >= bottom;
     }
 
     /**
@@ -1171,7 +1166,10 @@ public class CellLayout extends ViewGroup {
      */
     private int[] findNearestArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
             int spanY, boolean ignoreOccupied, int[] result, int[] resultSpan) {
-        lazyInitTempRectStack();
+        if (mTempRegions == null) {
+            mTempRegions = new int[mCountX * mCountY * 4];
+        }
+        final int[] regions = mTempRegions;
 
         // For items with a spanX / spanY > 1, the passed in point (pixelX, pixelY) corresponds
         // to the center of the item, but we are searching based on the top-left cell, so
@@ -1182,8 +1180,8 @@ public class CellLayout extends ViewGroup {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         double bestDistance = Double.MAX_VALUE;
-        final Rect bestRect = new Rect(-1, -1, -1, -1);
-        final Stack<Rect> validRegions = new Stack<>();
+        int bestLeft = -1, bestTop = -1, bestRight = -1, bestBottom = -1;
+        int regionCount = 0;
 
         final int countX = mCountX;
         final int countY = mCountY;
@@ -1194,18 +1192,13 @@ public class CellLayout extends ViewGroup {
         }
 
         for (int y = 0; y < countY - (minSpanY - 1); y++) {
-            inner:
             for (int x = 0; x < countX - (minSpanX - 1); x++) {
                 int ySize = -1;
                 int xSize = -1;
                 if (ignoreOccupied) {
                     // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (mOccupied.cells[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
+                    if (!mOccupied.isRegionVacant(x, y, minSpanX, minSpanY)) {
+                        continue;
                     }
                     xSize = minSpanX;
                     ySize = minSpanY;
@@ -1218,23 +1211,17 @@ public class CellLayout extends ViewGroup {
                     boolean hitMaxY = ySize >= spanY;
                     while (!(hitMaxX && hitMaxY)) {
                         if (incX && !hitMaxX) {
-                            for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX -1 || mOccupied.cells[x + xSize][y + j]) {
-                                    // We can't move out horizontally
-                                    hitMaxX = true;
-                                }
-                            }
-                            if (!hitMaxX) {
+                            if (!mOccupied.isRegionVacant(x + xSize, y, 1, ySize)) {
+                                // We can't move out horizontally
+                                hitMaxX = true;
+                            } else {
                                 xSize++;
                             }
                         } else if (!hitMaxY) {
-                            for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || mOccupied.cells[x + i][y + ySize]) {
-                                    // We can't move out vertically
-                                    hitMaxY = true;
-                                }
-                            }
-                            if (!hitMaxY) {
+                            if (!mOccupied.isRegionVacant(x, y + ySize, xSize, 1)) {
+                                // We can't move out vertically
+                                hitMaxY = true;
+                            } else {
                                 ySize++;
                             }
                         }
@@ -1242,9 +1229,6 @@ public class CellLayout extends ViewGroup {
                         hitMaxY |= ySize >= spanY;
                         incX = !incX;
                     }
-                    incX = true;
-                    hitMaxX = xSize >= spanX;
-                    hitMaxY = ySize >= spanY;
                 }
                 final int[] cellXY = mTmpPoint;
                 cellToCenterPoint(x, y, cellXY);
@@ -1252,20 +1236,23 @@ public class CellLayout extends ViewGroup {
                 // We verify that the current rect is not a sub-rect of any of our previous
                 // candidates. In this case, the current rect is disqualified in favour of the
                 // containing rect.
-                Rect currentRect = mTempRectStack.pop();
-                currentRect.set(x, y, x + xSize, y + ySize);
+                final int right = x + xSize;
+                final int bottom = y + ySize;
                 boolean contained = false;
-                for (Rect r : validRegions) {
-                    if (r.contains(currentRect)) {
+                for (int i = 0; i < regionCount; i += 4) {
+                    if (regionContains(regions, i, x, y, right, bottom)) {
                         contained = true;
                         break;
                     }
                 }
-                validRegions.push(currentRect);
+                regions[regionCount] = x;
+                regions[regionCount + 1] = y;
+                regions[regionCount + 2] = right;
+                regions[regionCount + 3] = bottom;
                 double distance = Math.hypot(cellXY[0] - pixelX,  cellXY[1] - pixelY);
 
-                if ((distance <= bestDistance && !contained) ||
-                        currentRect.contains(bestRect)) {
+                if ((distance <= bestDistance && !contained) || regionContains(
+                        regions, regionCount, bestLeft, bestTop, bestRight, bestBottom)) {
                     bestDistance = distance;
                     bestXY[0] = x;
                     bestXY[1] = y;
@@ -1273,8 +1260,12 @@ public class CellLayout extends ViewGroup {
                         resultSpan[0] = xSize;
                         resultSpan[1] = ySize;
                     }
-                    bestRect.set(currentRect);
+                    bestLeft = x;
+                    bestTop = y;
+                    bestRight = right;
+                    bestBottom = bottom;
                 }
+                regionCount += 4;
             }
         }
 
@@ -1283,7 +1274,6 @@ public class CellLayout extends ViewGroup {
             bestXY[0] = -1;
             bestXY[1] = -1;
         }
-        recycleTempRects(validRegions);
         return bestXY;
     }
 
@@ -1298,16 +1288,17 @@ public class CellLayout extends ViewGroup {
      * @param spanX Horizontal span of the object.
      * @param spanY Vertical span of the object.
      * @param direction The favored direction in which the views should move from x, y
-     * @param occupied The array which represents which cells in the CellLayout are occupied
-     * @param blockOccupied The array which represents which cells in the specified block (cellX,
-     *        cellY, spanX, spanY) are occupied. This is used when try to move a group of views.
+     * @param occupied The occupancy of the cells in the CellLayout
+     * @param blockOccupied The occupancy of the cells in the specified block (cellX, cellY,
+     *        spanX, spanY), or null if it is fully occupied. This is used when try to move a
+     *        group of views.
      * @param result Array in which to place the result, or null (in which case a new array will
      *        be allocated)
      * @return The X, Y cell of a vacant area that can contain this object,
      *         nearest the requested location.
      */
     private int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            boolean[][] occupied, boolean blockOccupied[][], int[] result) {
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         float bestDistance = Float.MAX_VALUE;
@@ -1317,15 +1308,11 @@ public class CellLayout extends ViewGroup {
         final int countY = mCountY;
 
         for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
             for (int x = 0; x < countX - (spanX - 1); x++) {
                 // First, let's see if this thing fits anywhere
-                for (int i = 0; i < spanX; i++) {
-                    for (int j = 0; j < spanY; j++) {
-                        if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
-                            continue inner;
-                        }
-                    }
+                if (blockOccupied == null ? !occupied.isRegionVacant(x, y, spanX, spanY)
+                        : occupied.overlaps(blockOccupied, x, y, spanX, spanY)) {
+                    continue;
                 }
 
                 float distance = (float) Math.hypot(x - cellX, y - cellY);
@@ -1362,7 +1349,7 @@ public class CellLayout extends ViewGroup {
         mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
 
         findNearestArea(c.cellX, c.cellY, c.spanX, c.spanY, direction,
-                mTmpOccupied.cells, null, mTempLocation);
+                mTmpOccupied, null, mTempLocation);
 
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
             c.cellX = mTempLocation[0];
@@ -1682,7 +1669,7 @@ public class CellLayout extends ViewGroup {
 
         findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
                 boundingRect.height(), direction,
-                mTmpOccupied.cells, blockOccupied.cells, mTempLocation);
+                mTmpOccupied, blockOccupied, mTempLocation);
 
         // If we successfuly found a location by pushing the block of views, we commit it
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
@@ -2646,7 +2633,7 @@ public class CellLayout extends ViewGroup {
 
     public boolean isOccupied(int x, int y) {
         if (x < mCountX && y < mCountY) {
-            return mOccupied.cells[x][y];
+            return mOccupied.isOccupied(x, y);
         } else {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
         }
@@ -53,6 +53,7 @@ import static com.android.launcher3.popup.SystemShortcut.INSTALL;
 import static com.android.launcher3.popup.SystemShortcut.WIDGETS;
 import static com.android.launcher3.states.RotationHelper.REQUEST_LOCK;
 import static com.android.launcher3.states.RotationHelper.REQUEST_NONE;
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
@@ -84,6 +85,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.Parcelable;
+import android.os.PowerManager;
 import android.os.Process;
 import android.os.StrictMode;
 import android.os.SystemClock;
@@ -130,6 +132,7 @@ import com.android.launcher3.dragndrop.LauncherDragController;
 import com.android.launcher3.folder.FolderGridOrganizer;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.icons.BitmapRenderer;
+import com.android.launcher3.icons.ClockTicker;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.keyboard.ViewGroupFocusHelper;
 import com.android.launcher3.logger.LauncherAtom;
@@ -175,6 +178,7 @@ import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.PendingRequestArgs;
 import com.android.launcher3.util.SafeCloseable;
+import com.android.launcher3.util.SimpleBroadcastReceiver;
 import com.android.launcher3.util.SystemUiController;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
@@ -932,6 +936,12 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         logStopAndResume(false /* isResume */);
         mAppWidgetHost.setActivityStarted(false);
         NotificationListener.removeNotificationsChangedListener();
+        // The process is likely to be killed while in background, keep the workspace
+        // snapshot up to date for the next cold start
+        mModel.saveWorkspaceSnapshot();
+        mModel.updatePinnedIcons();
+        unregisterReceiver(mPowerSaveModeReceiver);
+        ClockTicker.getInstance().setPaused(true);
     }
 
     @Override
@@ -944,6 +954,9 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         }
 
         mAppWidgetHost.setActivityStarted(true);
+        mPowerSaveModeReceiver.register(this, PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        updateClockTickerPowerMode();
+        ClockTicker.getInstance().setPaused(false);
         TraceHelper.INSTANCE.endSection(traceToken);
     }
 
@@ -1419,6 +1432,15 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         }
     };
 
+    private final SimpleBroadcastReceiver mPowerSaveModeReceiver =
+            new SimpleBroadcastReceiver(i -> updateClockTickerPowerMode());
+
+    private void updateClockTickerPowerMode() {
+        // Animated clocks only move their minute hand in battery saver
+        ClockTicker.getInstance().setLowPowerMode(
+                getSystemService(PowerManager.class).isPowerSaveMode());
+    }
+
     private void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
         mWorkspace.updateNotificationDots(updatedDots);
         mAppsView.getAppsStore().updateNotificationDots(updatedDots);
@@ -2083,13 +2105,15 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
+        // The icon cache lock can be held by DB work, don't wait for it on the UI thread
+        MODEL_EXECUTOR.execute(() -> mIconCache.onTrimMemory(level));
         if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
             // The widget preview db can result in holding onto over
             // 3MB of memory for caching which isn't necessary.
             SQLiteDatabase.releaseMemory();
 
             // This clears all widget bitmaps from the widget tray
-            // TODO(hyunyoungs)
+            LauncherAppState.getInstance(this).getWidgetCache().releaseUnusedBitmaps();
         }
     }
 
@@ -2793,6 +2817,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         mDragLayer.dump(prefix, writer);
         mStateManager.dump(prefix, writer);
         mPopupDataProvider.dump(prefix, writer);
+        ClockTicker.getInstance().dump(prefix, writer);
         mDeviceProfile.dump(prefix, writer);
 
         try {
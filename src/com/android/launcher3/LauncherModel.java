@@ -68,8 +68,11 @@ import com.android.launcher3.util.Preconditions;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
@@ -105,6 +108,9 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
 
     private final ArrayList<Callbacks> mCallbacksList = new ArrayList<>(1);
 
+    // Writers created by getWriter, which can hold writes batched for the current UI event
+    private final Set<ModelWriter> mWriters = Collections.newSetFromMap(new WeakHashMap<>());
+
     // < only access in worker thread >
     private final AllAppsList mBgAllAppsList;
 
@@ -147,8 +153,26 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     }
 
     public ModelWriter getWriter(boolean hasVerticalHotseat, boolean verifyChanges) {
-        return new ModelWriter(mApp.getContext(), this, mBgDataModel,
+        ModelWriter writer = new ModelWriter(mApp.getContext(), this, mBgDataModel,
                 hasVerticalHotseat, verifyChanges);
+        synchronized (mWriters) {
+            mWriters.add(writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Sends the writes batched by the writers to the model thread, so that the model work
+     * enqueued afterwards sees them.
+     */
+    private void flushWriters() {
+        ArrayList<ModelWriter> writers;
+        synchronized (mWriters) {
+            writers = new ArrayList<>(mWriters);
+        }
+        for (ModelWriter writer : writers) {
+            writer.flush();
+        }
     }
 
     @Override
@@ -292,6 +316,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
      * not be called as DB updates are automatically followed by UI update
      */
     public void forceReload() {
+        flushWriters();
         synchronized (mLock) {
             // Stop any existing loaders first, so they don't set mModelLoaded to true later
             stopLoader();
@@ -358,6 +383,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
      * @return true if the page could be bound synchronously.
      */
     public boolean startLoader() {
+        flushWriters();
         // Enable queue before starting loader. It will get disabled in Launcher#finishBindingItems
         ItemInstallQueue.INSTANCE.get(mApp.getContext())
                 .pauseModelPush(ItemInstallQueue.FLAG_LOADER_RUNNING);
@@ -559,7 +585,37 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
         });
     }
 
+    /**
+     * Persists the first screen of the workspace, so that it can be shown right away on the next
+     * cold start. Does nothing if the model is not loaded, or was loaded from a DB other than
+     * the main one (e.g. in minimal device mode).
+     */
+    public void saveWorkspaceSnapshot() {
+        enqueueModelUpdateTask(new BaseModelUpdateTask() {
+            @Override
+            public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
+                if (app.getInvariantDeviceProfile().dbFile.equals(dataModel.dbName)) {
+                    dataModel.workspaceSnapshot.write(app, dataModel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps the icons of the apps currently on the workspace in memory, for the workspace to
+     * be rebound quickly after memory is trimmed.
+     */
+    public void updatePinnedIcons() {
+        enqueueModelUpdateTask(new BaseModelUpdateTask() {
+            @Override
+            public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
+                app.getIconCache().setPinnedIcons(dataModel.getWorkspaceAppKeys());
+            }
+        });
+    }
+
     public void enqueueModelUpdateTask(ModelUpdateTask task) {
+        flushWriters();
         task.init(mApp, this, mBgDataModel, mBgAllAppsList, MAIN_EXECUTOR);
         MODEL_EXECUTOR.execute(task);
     }
@@ -632,6 +688,9 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
         }
         mModelDelegate.dump(prefix, fd, writer, args);
         mBgDataModel.dump(prefix, fd, writer, args);
+        mApp.getIconCache().dump(prefix, writer);
+        mApp.getWidgetCache().dump(prefix, writer);
+        ModelWriter.dumpStats(prefix, writer);
     }
 
     /**
@@ -18,6 +18,7 @@ package com.android.launcher3.allapps;
 import static com.saggitt.omega.util.Config.SORT_AZ;
 import static com.saggitt.omega.util.Config.SORT_BY_COLOR;
 import static com.saggitt.omega.util.Config.SORT_MOST_USED;
+import static com.saggitt.omega.util.Config.SORT_MOST_USED_RECENT;
 import static com.saggitt.omega.util.Config.SORT_ZA;
 
 import android.content.Context;
@@ -30,10 +31,8 @@ import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.LabelComparator;
 import com.saggitt.omega.allapps.AppColorComparator;
-import com.saggitt.omega.allapps.AppCountInfo;
-import com.saggitt.omega.allapps.AppUsageComparator;
+import com.saggitt.omega.allapps.AppUsageIndex;
 import com.saggitt.omega.preferences.OmegaPreferences;
-import com.saggitt.omega.util.DbHelper;
 
 import java.text.Collator;
 import java.util.ArrayList;
@@ -166,25 +165,25 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
     private void sortApps(int sortType) {
         switch (sortType) {
             case SORT_ZA:
-                mApps.sort((p2, p1) -> Collator
-                        .getInstance()
-                        .compare(p1.title, p2.title));
+                Collator collator = LabelComparator.getCollator();
+                mApps.sort((p2, p1) -> p1.getTitleCollationKey(collator)
+                        .compareTo(p2.getTitleCollationKey(collator)));
                 break;
 
             case SORT_MOST_USED:
-                DbHelper db = new DbHelper(mLauncher.getApplicationContext());
-                List<AppCountInfo> appsCounter = db.getAppsCount();
-                db.close();
-                AppUsageComparator mostUsedComparator = new AppUsageComparator(appsCounter);
-                mApps.sort(mostUsedComparator);
+                AppUsageIndex.INSTANCE.get(mLauncher).sortByUsage(mApps);
+                break;
+
+            case SORT_MOST_USED_RECENT:
+                AppUsageIndex.INSTANCE.get(mLauncher).sortByRecentUsage(mApps);
                 break;
 
             case SORT_BY_COLOR:
-                mApps.sort(mAppColorComparator);
+                mAppColorComparator.sort(mApps);
                 break;
             case SORT_AZ:
             default:
-                mApps.sort(mAppNameComparator);
+                mAppNameComparator.sort(mApps);
                 break;
         }
     }
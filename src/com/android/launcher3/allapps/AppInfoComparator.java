@@ -23,7 +23,9 @@ import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.util.LabelComparator;
 
+import java.text.Collator;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * A comparator to arrange items based on user profiles.
@@ -32,18 +34,43 @@ public class AppInfoComparator implements Comparator<AppInfo> {
 
     private final UserCache mUserManager;
     private final UserHandle mMyUser;
-    private final LabelComparator mLabelComparator;
+    // Resolved once per sort rather than for every comparison
+    private Collator mCollator;
 
     public AppInfoComparator(Context context) {
         mUserManager = UserCache.INSTANCE.get(context);
         mMyUser = Process.myUserHandle();
-        mLabelComparator = new LabelComparator();
+    }
+
+    /**
+     * Sorts {@param apps} with the collator of the current locale.
+     */
+    public void sort(List<AppInfo> apps) {
+        mCollator = LabelComparator.getCollator();
+        apps.sort(this);
+    }
+
+    /**
+     * Same order as {@link LabelComparator}, using the cached collation keys of the titles.
+     */
+    public static int compareTitles(AppInfo a, AppInfo b, Collator collator) {
+        // Ensure that we de-prioritize any titles that don't start with a
+        // linguistic letter or digit
+        boolean aStartsWithLetter = a.titleStartsWithLetter();
+        boolean bStartsWithLetter = b.titleStartsWithLetter();
+        if (aStartsWithLetter != bStartsWithLetter) {
+            return aStartsWithLetter ? -1 : 1;
+        }
+        return a.getTitleCollationKey(collator).compareTo(b.getTitleCollationKey(collator));
     }
 
     @Override
     public int compare(AppInfo a, AppInfo b) {
         // Order by the title in the current locale
-        int result = mLabelComparator.compare(a.title.toString(), b.title.toString());
+        if (mCollator == null) {
+            mCollator = LabelComparator.getCollator();
+        }
+        int result = compareTitles(a, b, mCollator);
         if (result != 0) {
             return result;
         }
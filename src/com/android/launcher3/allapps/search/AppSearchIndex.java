@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps.search;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Precomputed data used to match app titles against a search query, so that a keystroke
+ * doesn't need to look at every character of every title or to create a new collator.
+ *
+ * For each title, it keeps the word breaks, the lower case form used by the simple fuzzy
+ * search, and the character at every break folded to lower case when it is an ASCII letter
+ * or digit. Two different ASCII letters or digits are never equal for the collator, so a break
+ * can be skipped without a collator comparison when its character and the first character of
+ * the query are both ASCII and differ.
+ *
+ * Entries are created on first use and recreated when the title of the app changes. This
+ * class is not thread safe, it is meant to be used on the model thread.
+ */
+public class AppSearchIndex {
+
+    private final IdentityHashMap<AppInfo, Entry> mEntries = new IdentityHashMap<>();
+
+    private Locale mLocale;
+    private StringMatcher mMatcher;
+
+    /**
+     * Drops the entry of an app which is no longer in the list.
+     */
+    public void remove(AppInfo info) {
+        mEntries.remove(info);
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Adds to {@param out}, in order, up to {@param maxResults} apps from {@param apps} whose
+     * title matches {@param query} like {@link StringMatcherUtility#matches} does.
+     */
+    public void search(List<AppInfo> apps, String query, int maxResults, List<AppInfo> out) {
+        updateLocale();
+        final String queryLower = query.toLowerCase();
+        final int queryLength = queryLower.length();
+        if (queryLength == 0) {
+            return;
+        }
+        final boolean simpleFuzzySearch =
+                StringMatcherUtility.requestSimpleFuzzySearch(queryLower);
+        final char queryFirst = foldAscii(queryLower.charAt(0));
+
+        int resultCount = 0;
+        int total = apps.size();
+        for (int i = 0; i < total && resultCount < maxResults; i++) {
+            AppInfo info = apps.get(i);
+            if (getEntry(info).matches(queryLower, queryFirst, simpleFuzzySearch, mMatcher)) {
+                out.add(info);
+                resultCount++;
+            }
+        }
+    }
+
+    private void updateLocale() {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(mLocale)) {
+            // The collator and the lower case titles depend on the locale
+            mLocale = locale;
+            mMatcher = StringMatcher.getInstance();
+            mEntries.clear();
+        }
+    }
+
+    private Entry getEntry(AppInfo info) {
+        Entry entry = mEntries.get(info);
+        if (entry == null || entry.title != info.title) {
+            entry = new Entry(info.title);
+            mEntries.put(info, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the lower case form of {@param c} if it is an ASCII letter or digit, 0 otherwise.
+     */
+    private static char foldAscii(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+            return c;
+        }
+        return 0;
+    }
+
+    private static class Entry {
+
+        final CharSequence title;
+        final String target;
+        final String targetLower;
+        final int[] breaks;
+        final char[] breakChars;
+
+        Entry(CharSequence title) {
+            this.title = title;
+            target = title == null ? "" : title.toString();
+            targetLower = target.toLowerCase();
+            breaks = StringMatcherUtility.getWordBreaks(target);
+            breakChars = new char[breaks.length];
+            for (int i = 0; i < breaks.length; i++) {
+                breakChars[i] = foldAscii(target.charAt(breaks[i]));
+            }
+        }
+
+        boolean matches(String query, char queryFirst, boolean simpleFuzzySearch,
+                StringMatcher matcher) {
+            int queryLength = query.length();
+            int targetLength = target.length();
+            if (targetLength < queryLength) {
+                return false;
+            }
+            if (simpleFuzzySearch) {
+                return targetLower.contains(query);
+            }
+
+            int end = targetLength - queryLength;
+            for (int i = 0; i < breaks.length && breaks[i] <= end; i++) {
+                if (queryFirst != 0 && breakChars[i] != 0 && breakChars[i] != queryFirst) {
+                    continue;
+                }
+                int start = breaks[i];
+                if (matcher.matches(query, target.substring(start, start + queryLength))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
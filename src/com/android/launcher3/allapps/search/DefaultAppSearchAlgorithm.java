@@ -34,6 +34,7 @@ import com.android.launcher3.search.StringMatcherUtility;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The default search implementation.
@@ -45,6 +46,11 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
     private final LauncherAppState mAppState;
     private final Handler mResultHandler;
 
+    // Incremented for every request, older requests still waiting to run are dropped
+    private final AtomicInteger mRequestId = new AtomicInteger();
+    // Only accessed on the model thread
+    private final SearchSession mSession = new SearchSession();
+
     public DefaultAppSearchAlgorithm(Context context) {
         mAppState = LauncherAppState.getInstance(context);
         mResultHandler = new Handler(MAIN_EXECUTOR.getLooper());
@@ -53,17 +59,32 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
     @Override
     public void cancel(boolean interruptActiveRequests) {
         if (interruptActiveRequests) {
+            mRequestId.incrementAndGet();
             mResultHandler.removeCallbacksAndMessages(null);
         }
     }
 
     @Override
     public void doSearch(String query, SearchCallback<AdapterItem> callback) {
+        final int requestId = mRequestId.incrementAndGet();
         mAppState.getModel().enqueueModelUpdateTask(new BaseModelUpdateTask() {
             @Override
             public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
-                ArrayList<AdapterItem> result = getTitleMatchResult(apps.data, query);
-                mResultHandler.post(() -> callback.onSearchResult(query, result));
+                if (requestId != mRequestId.get()) {
+                    // A newer query was typed while this one was waiting
+                    return;
+                }
+                List<AppInfo> matches = mSession.search(apps, query);
+                int count = Math.min(matches.size(), MAX_RESULTS_COUNT);
+                ArrayList<AdapterItem> result = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    result.add(AdapterItem.asApp(i, "", matches.get(i), i));
+                }
+                mResultHandler.post(() -> {
+                    if (requestId == mRequestId.get()) {
+                        callback.onSearchResult(query, result);
+                    }
+                });
             }
         });
     }
@@ -92,4 +113,41 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
         }
         return result;
     }
+
+    /**
+     * Keeps all the apps matching the last query, so that when characters are appended to it
+     * only those need to be matched again. Any other edit, or a change in the apps, starts
+     * over from the full list.
+     */
+    private static class SearchSession {
+
+        private String mQuery;
+        private boolean mSimpleFuzzySearch;
+        private int mAppsVersion;
+        private ArrayList<AppInfo> mMatches = new ArrayList<>();
+        private ArrayList<AppInfo> mScratch = new ArrayList<>();
+
+        List<AppInfo> search(AllAppsList apps, String query) {
+            String queryLower = query.toLowerCase();
+            // The simple fuzzy search matches anywhere in the title, so its matches are not
+            // a subset of the ones of a query without Han characters.
+            boolean simpleFuzzySearch = StringMatcherUtility.requestSimpleFuzzySearch(queryLower);
+            boolean refine = mQuery != null && !mQuery.isEmpty()
+                    && mAppsVersion == apps.getVersion()
+                    && mSimpleFuzzySearch == simpleFuzzySearch
+                    && queryLower.startsWith(mQuery);
+
+            mScratch.clear();
+            apps.getSearchIndex().search(refine ? mMatches : apps.data, query,
+                    Integer.MAX_VALUE, mScratch);
+            ArrayList<AppInfo> matches = mScratch;
+            mScratch = mMatches;
+            mMatches = matches;
+
+            mQuery = queryLower;
+            mSimpleFuzzySearch = simpleFuzzySearch;
+            mAppsVersion = apps.getVersion();
+            return mMatches;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import android.os.LocaleList;
 
 import com.android.launcher3.Utilities;
 
+import java.util.HashMap;
 import java.util.Locale;
 
 import androidx.annotation.NonNull;
@@ -17,6 +18,9 @@ public class AlphabeticIndexCompat {
 
     private final AlphabeticIndex.ImmutableIndex mBaseIndex;
 
+    // Section of each title already seen, as finding the bucket runs a full collation
+    private final HashMap<String, String> mSectionNames = new HashMap<>();
+
     public AlphabeticIndexCompat(Context context) {
         this(context.getResources().getConfiguration().getLocales());
     }
@@ -48,6 +52,10 @@ public class AlphabeticIndexCompat {
      */
     public String computeSectionName(@NonNull CharSequence cs) {
         String s = Utilities.trim(cs);
+        return mSectionNames.computeIfAbsent(s, this::computeSectionNameUncached);
+    }
+
+    private String computeSectionNameUncached(String s) {
         String sectionName = mBaseIndex.getBucket(mBaseIndex.getBucketIndex(s)).getLabel();
         if (Utilities.trim(sectionName).isEmpty() && s.length() > 0) {
             int c = s.codePointAt(0);
@@ -18,6 +18,7 @@ package com.android.launcher3.icons;
 
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
 
 import android.content.ComponentName;
 import android.content.Context;
@@ -57,6 +58,7 @@ import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 import com.saggitt.omega.icons.CustomIconProvider;
 
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -113,6 +115,11 @@ public class IconCache extends BaseIconCache {
         return LauncherIcons.obtain(mContext);
     }
 
+    @Override
+    protected Executor getPreloadExecutor() {
+        return THREAD_POOL_EXECUTOR;
+    }
+
     /**
      * Updates the entries related to the given package in memory and persistent DB.
      */
@@ -131,11 +138,37 @@ public class IconCache extends BaseIconCache {
         }
     }
 
+    /**
+     * Creates the icon for {@param info} without holding the cache lock, so that the rendering
+     * can be spread across multiple threads. The result can be added using
+     * {@link #addRenderedIcon(LauncherActivityInfo, BitmapInfo)}.
+     */
+    public BitmapInfo renderIcon(LauncherActivityInfo info) {
+        return mLauncherActivityInfoCachingLogic.loadIcon(mContext, info);
+    }
+
+    /**
+     * Adds an icon created by {@link #renderIcon(LauncherActivityInfo)} to memory and persistent
+     * DB, replacing any existing entry for the component.
+     */
+    public void addRenderedIcon(LauncherActivityInfo info, BitmapInfo bitmap) {
+        String packageName = info.getComponentName().getPackageName();
+        try {
+            PackageInfo pkgInfo = mPackageManager.getPackageInfo(packageName,
+                    PackageManager.GET_UNINSTALLED_PACKAGES);
+            addIconToDBAndMemCache(info, mLauncherActivityInfoCachingLogic, bitmap, pkgInfo,
+                    mUserManager.getSerialNumberForUser(info.getUser()));
+        } catch (NameNotFoundException e) {
+            Log.d(TAG, "Package not found", e);
+        }
+    }
+
     /**
      * Closes the cache DB. This will clear any in-memory cache.
      */
     public void close() {
         mIconDb.close();
+        mIconStore.close();
     }
 
     /**
@@ -324,6 +357,9 @@ public class IconCache extends BaseIconCache {
         info.title = Utilities.trim(entry.title);
         info.contentDescription = entry.contentDescription;
         info.bitmap = (entry.bitmap == null) ? getDefaultIcon(info.user) : entry.bitmap;
+        if (info instanceof AppInfo) {
+            ((AppInfo) info).updateColorSortKey();
+        }
     }
 
     public Drawable getFullResIcon(LauncherActivityInfo info) {
@@ -32,20 +32,27 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.launcher3.AppFilter;
+import com.android.launcher3.allapps.search.AppSearchIndex;
 import com.android.launcher3.compat.AlphabeticIndexCompat;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.pm.PackageInstallInfo;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.FlagOp;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.PackageManagerHelper;
+import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.SafeCloseable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 
 
@@ -62,17 +69,28 @@ public class AllAppsList {
     public static final int DEFAULT_APPLICATIONS_NUMBER = 42;
 
     /**
-     * The list off all apps.
+     * The list off all apps. It must only be modified through this class, to keep the indices
+     * below in sync.
      */
     public final ArrayList<AppInfo> data = new ArrayList<>(DEFAULT_APPLICATIONS_NUMBER);
 
+    // Apps of data by component and by package. Promise apps can share a component with
+    // another entry, in which case the first one added is indexed.
+    private final HashMap<ComponentKey, AppInfo> mComponentIndex = new HashMap<>();
+    private final HashMap<PackageUserKey, ArrayList<AppInfo>> mPackageIndex = new HashMap<>();
+    // Sorted copy of data returned by copyData, dropped when an app is added or removed
+    private AppInfo[] mSortedData;
+
     private IconCache mIconCache;
     private AppFilter mAppFilter;
 
     private boolean mDataChanged = false;
+    // Incremented on every change, unlike mDataChanged it is never reset
+    private int mVersion = 0;
     private Consumer<AppInfo> mRemoveListener = NO_OP_CONSUMER;
 
     private AlphabeticIndexCompat mIndex;
+    private final AppSearchIndex mSearchIndex = new AppSearchIndex();
 
     /**
      * @see Callbacks#FLAG_HAS_SHORTCUT_PERMISSION
@@ -90,6 +108,20 @@ public class AllAppsList {
         mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
     }
 
+    /**
+     * Returns the index used to match the titles of {@link #data} against a search query.
+     */
+    public AppSearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
+    /**
+     * Returns a number which changes every time the list, or any app in it, changes.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
     /**
      * Returns true if there have been any changes since last call.
      */
@@ -116,6 +148,7 @@ public class AllAppsList {
             mFlags &= ~flagMask;
         }
         mDataChanged = true;
+        mVersion++;
     }
 
     /**
@@ -142,8 +175,19 @@ public class AllAppsList {
         mIconCache.getTitleAndIcon(info, activityInfo, false /* useLowResIcon */);
         info.sectionName = mIndex.computeSectionName(info.title);
 
-        data.add(info);
-        mDataChanged = true;
+        addToData(info);
+    }
+
+    /**
+     * Loads the cached icons of {@param activities} in a single batch, before they are added or
+     * updated one by one.
+     */
+    public void preloadIcons(List<LauncherActivityInfo> activities, UserHandle user) {
+        ArrayList<ComponentKey> keys = new ArrayList<>(activities.size());
+        for (LauncherActivityInfo info : activities) {
+            keys.add(new ComponentKey(info.getComponentName(), user));
+        }
+        mIconCache.preloadEntries(keys, false /* useLowResIcon */);
     }
 
     public void addPromiseApp(Context context, PackageInstallInfo installInfo) {
@@ -154,51 +198,101 @@ public class AllAppsList {
             mIconCache.getTitleAndIcon(info, info.usingLowResIcon());
             info.sectionName = mIndex.computeSectionName(info.title);
 
-            data.add(info);
-            mDataChanged = true;
+            addToData(info);
         }
     }
 
+    private void addToData(AppInfo info) {
+        data.add(info);
+        mComponentIndex.putIfAbsent(info.toComponentKey(), info);
+        mPackageIndex.computeIfAbsent(getPackageKey(info), k -> new ArrayList<>()).add(info);
+        mSortedData = null;
+        mDataChanged = true;
+        mVersion++;
+    }
+
     /**
      * Updates the given PackageInstallInfo's associated AppInfo's installation info.
      */
     public List<AppInfo> updatePromiseInstallInfo(PackageInstallInfo installInfo) {
         List<AppInfo> updatedAppInfos = new ArrayList<>();
-        UserHandle user = installInfo.user;
-        for (int i = data.size() - 1; i >= 0; i--) {
-            final AppInfo appInfo = data.get(i);
-            final ComponentName tgtComp = appInfo.getTargetComponent();
-            if (tgtComp != null && tgtComp.getPackageName().equals(installInfo.packageName)
-                    && appInfo.user.equals(user)) {
-                if (installInfo.state == PackageInstallInfo.STATUS_INSTALLED_DOWNLOADING
-                        || installInfo.state == PackageInstallInfo.STATUS_INSTALLING) {
-                    if (appInfo.isAppStartable()
-                            && installInfo.state == PackageInstallInfo.STATUS_INSTALLING) {
-                        continue;
-                    }
-                    appInfo.setProgressLevel(installInfo);
-
-                    updatedAppInfos.add(appInfo);
-                } else if (installInfo.state == PackageInstallInfo.STATUS_FAILED
-                        && !appInfo.isAppStartable()) {
-                    removeApp(i);
+        List<AppInfo> removed = new ArrayList<>();
+        for (AppInfo appInfo : getPackageApps(installInfo.packageName, installInfo.user)) {
+            if (installInfo.state == PackageInstallInfo.STATUS_INSTALLED_DOWNLOADING
+                    || installInfo.state == PackageInstallInfo.STATUS_INSTALLING) {
+                if (appInfo.isAppStartable()
+                        && installInfo.state == PackageInstallInfo.STATUS_INSTALLING) {
+                    continue;
                 }
+                appInfo.setProgressLevel(installInfo);
+
+                updatedAppInfos.add(appInfo);
+            } else if (installInfo.state == PackageInstallInfo.STATUS_FAILED
+                    && !appInfo.isAppStartable()) {
+                removed.add(appInfo);
             }
         }
+        removeApps(removed);
         return updatedAppInfos;
     }
 
-    private void removeApp(int index) {
-        AppInfo removed = data.remove(index);
-        if (removed != null) {
+    /**
+     * Returns the apps of the given package, in the order they were added.
+     */
+    private List<AppInfo> getPackageApps(String packageName, UserHandle user) {
+        ArrayList<AppInfo> apps = mPackageIndex.get(new PackageUserKey(packageName, user));
+        return apps == null ? Collections.emptyList() : new ArrayList<>(apps);
+    }
+
+    private static PackageUserKey getPackageKey(AppInfo info) {
+        return new PackageUserKey(info.componentName.getPackageName(), info.user);
+    }
+
+    private void removeApps(List<AppInfo> apps) {
+        if (apps.isEmpty()) {
+            return;
+        }
+        Set<AppInfo> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(apps);
+        data.removeIf(removed::contains);
+        mSortedData = null;
+        for (AppInfo info : removed) {
+            PackageUserKey packageKey = getPackageKey(info);
+            ArrayList<AppInfo> packageApps = mPackageIndex.get(packageKey);
+            if (packageApps != null) {
+                packageApps.removeIf(a -> a == info);
+                if (packageApps.isEmpty()) {
+                    mPackageIndex.remove(packageKey);
+                }
+            }
+            ComponentKey key = info.toComponentKey();
+            if (mComponentIndex.get(key) == info) {
+                mComponentIndex.remove(key);
+                if (packageApps != null) {
+                    // Index another app with the same component, if any
+                    for (AppInfo other : packageApps) {
+                        if (key.equals(other.toComponentKey())) {
+                            mComponentIndex.put(key, other);
+                            break;
+                        }
+                    }
+                }
+            }
+            mSearchIndex.remove(info);
             mDataChanged = true;
-            mRemoveListener.accept(removed);
+            mVersion++;
+            mRemoveListener.accept(info);
         }
     }
 
     public void clear() {
         data.clear();
+        mComponentIndex.clear();
+        mPackageIndex.clear();
+        mSortedData = null;
+        mSearchIndex.clear();
         mDataChanged = false;
+        mVersion++;
         // Reset the index as locales might have changed
         mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
     }
@@ -222,13 +316,7 @@ public class AllAppsList {
      * Remove the apps for the given apk identified by packageName.
      */
     public void removePackage(String packageName, UserHandle user) {
-        final List<AppInfo> data = this.data;
-        for (int i = data.size() - 1; i >= 0; i--) {
-            AppInfo info = data.get(i);
-            if (info.user.equals(user) && packageName.equals(info.componentName.getPackageName())) {
-                removeApp(i);
-            }
-        }
+        removeApps(getPackageApps(packageName, user));
     }
 
     /**
@@ -241,16 +329,33 @@ public class AllAppsList {
             if (matcher.matches(info, info.componentName)) {
                 info.runtimeStatusFlags = op.apply(info.runtimeStatusFlags);
                 mDataChanged = true;
+                mVersion++;
             }
         }
     }
 
     public void updateIconsAndLabels(HashSet<String> packages, UserHandle user) {
-        for (AppInfo info : data) {
-            if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
+        ArrayList<ComponentKey> keys = new ArrayList<>();
+        for (String packageName : packages) {
+            ArrayList<AppInfo> apps = mPackageIndex.get(new PackageUserKey(packageName, user));
+            if (apps != null) {
+                for (AppInfo info : apps) {
+                    keys.add(info.toComponentKey());
+                }
+            }
+        }
+        mIconCache.preloadEntries(keys, false /* useLowResIcon */);
+
+        for (String packageName : packages) {
+            ArrayList<AppInfo> apps = mPackageIndex.get(new PackageUserKey(packageName, user));
+            if (apps == null) {
+                continue;
+            }
+            for (AppInfo info : apps) {
                 mIconCache.updateTitleAndIcon(info);
                 info.sectionName = mIndex.computeSectionName(info.title);
                 mDataChanged = true;
+                mVersion++;
             }
         }
     }
@@ -265,19 +370,22 @@ public class AllAppsList {
         if (matches.size() > 0) {
             // Find disabled/removed activities and remove them from data and add them
             // to the removed list.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final AppInfo applicationInfo = data.get(i);
-                if (user.equals(applicationInfo.user)
-                        && packageName.equals(applicationInfo.componentName.getPackageName())) {
-                    if (!findActivity(matches, applicationInfo.componentName)) {
-                        Log.w(TAG, "Changing shortcut target due to app component name change.");
-                        removeApp(i);
-                    }
+            HashSet<ComponentName> components = new HashSet<>(matches.size());
+            for (LauncherActivityInfo info : matches) {
+                components.add(info.getComponentName());
+            }
+            List<AppInfo> removed = new ArrayList<>();
+            for (AppInfo applicationInfo : getPackageApps(packageName, user)) {
+                if (!components.contains(applicationInfo.componentName)) {
+                    Log.w(TAG, "Changing shortcut target due to app component name change.");
+                    removed.add(applicationInfo);
                 }
             }
+            removeApps(removed);
 
             // Find enabled activities and add them to the adapter
             // Also updates existing activities with new labels/icons
+            preloadIcons(matches, user);
             for (final LauncherActivityInfo info : matches) {
                 AppInfo applicationInfo = findAppInfo(info.getComponentName(), user);
                 if (applicationInfo == null) {
@@ -293,18 +401,17 @@ public class AllAppsList {
                     applicationInfo.intent = launchIntent;
 
                     mDataChanged = true;
+
+                    mVersion++;
                 }
             }
         } else {
             // Remove all data for this package.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final AppInfo applicationInfo = data.get(i);
-                if (user.equals(applicationInfo.user)
-                        && packageName.equals(applicationInfo.componentName.getPackageName())) {
-                    mIconCache.remove(applicationInfo.componentName, user);
-                    removeApp(i);
-                }
+            List<AppInfo> removed = getPackageApps(packageName, user);
+            for (AppInfo applicationInfo : removed) {
+                mIconCache.remove(applicationInfo.componentName, user);
             }
+            removeApps(removed);
         }
 
         return matches;
@@ -316,6 +423,7 @@ public class AllAppsList {
     public void reloadPackages(Context context, UserHandle user) {
         List<LauncherActivityInfo> apps = context.getSystemService(LauncherApps.class)
                 .getActivityList(null, user);
+        preloadIcons(apps, user);
         for (LauncherActivityInfo info : apps) {
             AppInfo applicationInfo = findAppInfo(info.getComponentName(), user);
             if (applicationInfo == null) {
@@ -323,25 +431,13 @@ public class AllAppsList {
             }
         }
 
-        for (int i = data.size() - 1; i >= 0; i--) {
-            final AppInfo applicationInfo = data.get(i);
+        List<AppInfo> removed = new ArrayList<>();
+        for (AppInfo applicationInfo : data) {
             if (user.equals(applicationInfo.user) && !mAppFilter.shouldShowApp(applicationInfo.componentName, applicationInfo.user)) {
-                removeApp(i);
-            }
-        }
-    }
-
-    /**
-     * Returns whether <em>apps</em> contains <em>component</em>.
-     */
-    private static boolean findActivity(List<LauncherActivityInfo> apps,
-                                        ComponentName component) {
-        for (LauncherActivityInfo info : apps) {
-            if (info.getComponentName().equals(component)) {
-                return true;
+                removed.add(applicationInfo);
             }
         }
-        return false;
+        removeApps(removed);
     }
 
     /**
@@ -352,18 +448,16 @@ public class AllAppsList {
     public @Nullable
     AppInfo findAppInfo(@NonNull ComponentName componentName,
                         @NonNull UserHandle user) {
-        for (AppInfo info : data) {
-            if (componentName.equals(info.componentName) && user.equals(info.user)) {
-                return info;
-            }
-        }
-        return null;
+        return mComponentIndex.get(new ComponentKey(componentName, user));
     }
 
     public AppInfo[] copyData() {
-        AppInfo[] result = data.toArray(EMPTY_ARRAY);
-        Arrays.sort(result, COMPONENT_KEY_COMPARATOR);
-        return result;
+        if (mSortedData == null) {
+            // The sort only depends on the component and the user, which never change
+            mSortedData = data.toArray(EMPTY_ARRAY);
+            Arrays.sort(mSortedData, COMPONENT_KEY_COMPARATOR);
+        }
+        return mSortedData.clone();
     }
 
     public SafeCloseable trackRemoves(Consumer<AppInfo> removeListener) {
@@ -93,6 +93,24 @@ public abstract class BaseLoaderResults {
         }
     }
 
+    /**
+     * Binds the items of a {@link WorkspaceSnapshot} while the workspace is being loaded. They
+     * are discarded by the next call to {@link #bindWorkspace()}, which starts a new binding.
+     */
+    public void bindWorkspaceSnapshot(WorkspaceSnapshot.Content snapshot) {
+        synchronized (mBgDataModel) {
+            mBgDataModel.lastBindId++;
+            mMyBindingId = mBgDataModel.lastBindId;
+        }
+        IntArray screenIds = IntArray.wrap(snapshot.screenId);
+        executeCallbacksTask(c -> {
+            c.clearPendingBinds();
+            c.startBinding();
+            c.bindScreens(screenIds);
+            c.bindItems(snapshot.items, false);
+        }, mUiExecutor);
+    }
+
     public abstract void bindDeepShortcuts();
 
     public void bindAllApps() {
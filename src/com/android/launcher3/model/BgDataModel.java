@@ -109,6 +109,16 @@ public class BgDataModel {
      */
     public final WidgetsModel widgetsModel = new WidgetsModel();
 
+    /**
+     * Persisted copy of the first screen, shown on cold start until the model is bound
+     */
+    public final WorkspaceSnapshot workspaceSnapshot = new WorkspaceSnapshot();
+
+    /**
+     * Name of the DB the workspace was last loaded from
+     */
+    public String dbName;
+
     /**
      * Id when the model was last bound
      */
@@ -372,6 +382,32 @@ public class BgDataModel {
         }
     }
 
+    /**
+     * Returns the items of the hotseat and of the first workspace screen, excluding widgets
+     * and folder contents.
+     */
+    public synchronized ArrayList<ItemInfo> getFirstScreenItems() {
+        ArrayList<ItemInfo> firstScreenItems = new ArrayList<>();
+        ModelUtils.filterCurrentWorkspaceItems(collectWorkspaceScreens().get(0),
+                new ArrayList<>(workspaceItems), firstScreenItems, new ArrayList<>());
+        return firstScreenItems;
+    }
+
+    /**
+     * Returns the components of all the apps on the workspace and hotseat, including the ones
+     * in folders.
+     */
+    public synchronized HashSet<ComponentKey> getWorkspaceAppKeys() {
+        HashSet<ComponentKey> keys = new HashSet<>();
+        for (ItemInfo info : itemsIdMap) {
+            if (info.itemType == Favorites.ITEM_TYPE_APPLICATION
+                    && info.getTargetComponent() != null) {
+                keys.add(new ComponentKey(info.getTargetComponent(), info.user));
+            }
+        }
+        return keys;
+    }
+
     /**
      * Returns a list containing all workspace items including widgets.
      */
@@ -22,6 +22,7 @@ import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.ComponentKey;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -55,10 +56,20 @@ public class CacheDataUpdatedTask extends BaseModelUpdateTask {
                 if (si.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION
                         && isValidShortcut(si) && cn != null
                         && mPackages.contains(cn.getPackageName())) {
-                    iconCache.getTitleAndIcon(si, si.usingLowResIcon());
                     updatedShortcuts.add(si);
                 }
             });
+            ArrayList<ComponentKey> highResKeys = new ArrayList<>();
+            ArrayList<ComponentKey> lowResKeys = new ArrayList<>();
+            for (WorkspaceItemInfo si : updatedShortcuts) {
+                (si.usingLowResIcon() ? lowResKeys : highResKeys)
+                        .add(new ComponentKey(si.getTargetComponent(), si.user));
+            }
+            iconCache.preloadEntries(highResKeys, false /* useLowResIcon */);
+            iconCache.preloadEntries(lowResKeys, true /* useLowResIcon */);
+            for (WorkspaceItemInfo si : updatedShortcuts) {
+                iconCache.getTitleAndIcon(si, si.usingLowResIcon());
+            }
             apps.updateIconsAndLabels(mPackages, mUser);
         }
         bindUpdatedWorkspaceItems(updatedShortcuts);
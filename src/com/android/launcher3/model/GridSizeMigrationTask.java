@@ -555,7 +555,7 @@ public class GridSizeMigrationTask {
 
                 for (int y = startY; y < mTrgY; y++) {
                     for (int x = 0; x < mTrgX; x++) {
-                        if (!occupied.cells[x][y]) {
+                        if (!occupied.isOccupied(x, y)) {
                             int dist = ignoreMove ? 0 :
                                     ((me.cellX - x) * (me.cellX - x) + (me.cellY - y) * (me.cellY
                                             - y));
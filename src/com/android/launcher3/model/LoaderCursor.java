@@ -53,6 +53,7 @@ import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.shortcuts.ShortcutKey;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ContentWriter;
 import com.android.launcher3.util.GridOccupancy;
 import com.android.launcher3.util.IntArray;
@@ -60,6 +61,7 @@ import com.android.launcher3.util.IntSparseArrayMap;
 
 import java.net.URISyntaxException;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 
 /**
  * Extension of {@link Cursor} with utility methods for workspace loading.
@@ -151,6 +153,30 @@ public class LoaderCursor extends CursorWrapper {
         return result;
     }
 
+    /**
+     * Loads the cached icons of all the apps of this cursor in a single batch, in high res for
+     * the items on the workspace or hotseat and in low res for the others, and moves the cursor
+     * back before the first row.
+     */
+    public void preloadAppIcons() {
+        ArrayList<ComponentKey> highResKeys = new ArrayList<>();
+        ArrayList<ComponentKey> lowResKeys = new ArrayList<>();
+        while (moveToNext()) {
+            if (user == null || itemType != Favorites.ITEM_TYPE_APPLICATION) {
+                continue;
+            }
+            Intent intent = parseIntent();
+            ComponentName cn = intent == null ? null : intent.getComponent();
+            if (cn != null) {
+                (isOnWorkspaceOrHotseat() ? highResKeys : lowResKeys)
+                        .add(new ComponentKey(cn, user));
+            }
+        }
+        moveToPosition(-1);
+        mIconCache.preloadEntries(highResKeys, false /* useLowResIcon */);
+        mIconCache.preloadEntries(lowResKeys, true /* useLowResIcon */);
+    }
+
     public Intent parseIntent() {
         String intentDescription = getString(intentIndex);
         try {
@@ -425,18 +451,18 @@ public class LoaderCursor extends CursorWrapper {
             }
 
             if (hotseatOccupancy != null) {
-                if (hotseatOccupancy.cells[(int) item.screenId][0]) {
+                if (hotseatOccupancy.isOccupied(item.screenId, 0)) {
                     Log.e(TAG, "Error loading shortcut into hotseat " + item
                             + " into position (" + item.screenId + ":" + item.cellX + ","
                             + item.cellY + ") already occupied");
                     return false;
                 } else {
-                    hotseatOccupancy.cells[item.screenId][0] = true;
+                    hotseatOccupancy.markCells(item.screenId, 0, 1, 1, true);
                     return true;
                 }
             } else {
                 final GridOccupancy occupancy = new GridOccupancy(mIDP.numDatabaseHotseatIcons, 1);
-                occupancy.cells[item.screenId][0] = true;
+                occupancy.markCells(item.screenId, 0, 1, 1, true);
                 occupied.put(LauncherSettings.Favorites.CONTAINER_HOTSEAT, occupancy);
                 return true;
             }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
+import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
+
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.ShortcutInfo;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.TimingLogger;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.shortcuts.ShortcutRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Starts the system queries needed by the later steps of {@link LoaderTask} on background
+ * threads, so that they run while the workspace is being loaded and bound:
+ * - the activity list of every profile
+ * - the deep shortcuts of every unlocked profile
+ * - the widget providers and shortcut config activities
+ *
+ * The loader still applies the results in its usual order. A result which is missing, or
+ * whose query failed, is queried again by the loader itself.
+ */
+class LoaderPrefetch {
+
+    private static final String TAG = "LoaderPrefetch";
+
+    private final Future<Map<UserHandle, List<LauncherActivityInfo>>> mActivityLists;
+    private final Future<Map<UserHandle, List<ShortcutInfo>>> mDeepShortcuts;
+    private final Future<WidgetsModel.ProviderLists> mWidgetProviders;
+
+    LoaderPrefetch(Context context, List<UserHandle> profiles) {
+        mActivityLists = submit("activity lists", () -> {
+            LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
+            Map<UserHandle, List<LauncherActivityInfo>> result = new ArrayMap<>();
+            for (UserHandle user : profiles) {
+                result.put(user, launcherApps.getActivityList(null, user));
+            }
+            return result;
+        });
+        mDeepShortcuts = submit("deep shortcuts", () -> {
+            Map<UserHandle, List<ShortcutInfo>> result = new ArrayMap<>();
+            if (!hasShortcutsPermission(context)) {
+                return result;
+            }
+            UserManager userManager = context.getSystemService(UserManager.class);
+            for (UserHandle user : profiles) {
+                if (userManager.isUserUnlocked(user)) {
+                    result.put(user,
+                            new ShortcutRequest(context, user).query(ShortcutRequest.ALL));
+                }
+            }
+            return result;
+        });
+        mWidgetProviders = submit("widget providers",
+                () -> WidgetsModel.ProviderLists.query(context, null));
+    }
+
+    /**
+     * Returns the activity list of each profile, or null if it isn't available.
+     */
+    @Nullable
+    Map<UserHandle, List<LauncherActivityInfo>> getActivityLists() {
+        return get(mActivityLists);
+    }
+
+    /**
+     * Returns all the deep shortcuts of each profile which was unlocked, or null if they aren't
+     * available.
+     */
+    @Nullable
+    Map<UserHandle, List<ShortcutInfo>> getDeepShortcuts() {
+        return get(mDeepShortcuts);
+    }
+
+    @Nullable
+    WidgetsModel.ProviderLists getWidgetProviders() {
+        return get(mWidgetProviders);
+    }
+
+    /**
+     * Drops the queries which haven't started yet.
+     */
+    void cancel() {
+        mActivityLists.cancel(false);
+        mDeepShortcuts.cancel(false);
+        mWidgetProviders.cancel(false);
+    }
+
+    private static <T> Future<T> submit(String name, Callable<T> query) {
+        return THREAD_POOL_EXECUTOR.submit(() -> {
+            TimingLogger logger = new TimingLogger(TAG, name);
+            try {
+                return query.call();
+            } finally {
+                logger.addSplit("query");
+                logger.dumpToLog();
+            }
+        });
+    }
+
+    @Nullable
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            Log.w(TAG, "Prefetch failed", e);
+            return null;
+        }
+    }
+}
@@ -52,6 +52,8 @@ import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.TimingLogger;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.DeviceProfile;
 import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherAppState;
@@ -70,6 +72,7 @@ import com.android.launcher3.icons.LauncherActivityCachingLogic;
 import com.android.launcher3.icons.ShortcutCachingLogic;
 import com.android.launcher3.icons.cache.IconCacheUpdateHandler;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.FolderInfo;
 import com.android.launcher3.model.data.ItemInfo;
@@ -135,6 +138,10 @@ public class LoaderTask implements Runnable {
     protected final Map<ComponentKey, AppWidgetProviderInfo> mWidgetProvidersMap = new ArrayMap<>();
 
     private boolean mStopped;
+    // Only set while run() executes, so that subclasses loading parts of the model don't
+    // start queries they wouldn't use
+    @Nullable
+    private LoaderPrefetch mPrefetch;
 
     private final Set<PackageUserKey> mPendingPackages = new HashSet<>();
     private boolean mItemsDeleted = false;
@@ -193,9 +200,19 @@ public class LoaderTask implements Runnable {
         Object traceToken = TraceHelper.INSTANCE.beginSection(TAG);
         TimingLogger logger = new TimingLogger(TAG, "run");
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
+            // The system queries of the later steps don't depend on the workspace, start them
+            // now so that they are ready when those steps run
+            mPrefetch = new LoaderPrefetch(mApp.getContext(), mUserCache.getUserProfiles());
+            logASplit(logger, "start prefetch");
+
+            if (bindWorkspaceSnapshot()) {
+                logASplit(logger, "bindWorkspaceSnapshot");
+            }
+
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
             loadWorkspace(allShortcuts);
             logASplit(logger, "loadWorkspace");
+            mIconCache.setPinnedIcons(mBgDataModel.getWorkspaceAppKeys());
 
             // Sanitize data re-syncs widgets/shortcuts based on the workspace loaded from db.
             // sanitizeData should not be invoked if the workspace is loaded from a db different
@@ -211,6 +228,11 @@ public class LoaderTask implements Runnable {
             mResults.bindWorkspace();
             logASplit(logger, "bindWorkspace");
 
+            if (mApp.getInvariantDeviceProfile().dbFile.equals(mDbName)) {
+                mBgDataModel.workspaceSnapshot.write(mApp, mBgDataModel);
+                logASplit(logger, "write workspace snapshot");
+            }
+
             mModelDelegate.workspaceLoadComplete();
             // Notify the installer packages of packages with active installs on the first screen.
             sendFirstScreenActiveInstallsBroadcast();
@@ -271,8 +293,8 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // fourth step
-            List<ComponentWithLabelAndIcon> allWidgetsList =
-                    mBgDataModel.widgetsModel.update(mApp, null);
+            List<ComponentWithLabelAndIcon> allWidgetsList = mBgDataModel.widgetsModel.update(
+                    mApp, null, mPrefetch.getWidgetProviders());
             logASplit(logger, "load widgets");
 
             verifyNotStopped();
@@ -300,11 +322,42 @@ public class LoaderTask implements Runnable {
             // Loader stopped, ignore
             logASplit(logger, "Cancelled");
         } finally {
+            if (mPrefetch != null) {
+                mPrefetch.cancel();
+                mPrefetch = null;
+            }
             logger.dumpToLog();
         }
         TraceHelper.INSTANCE.endSection(traceToken);
     }
 
+    /**
+     * Binds the last {@link WorkspaceSnapshot} if nothing was bound yet in this process, so
+     * that a cold start doesn't show an empty workspace while the DB is read.
+     *
+     * @return true if a snapshot was bound.
+     */
+    private boolean bindWorkspaceSnapshot() {
+        synchronized (mBgDataModel) {
+            if (mBgDataModel.lastBindId != 0) {
+                return false;
+            }
+        }
+        for (Callbacks cb : mApp.getModel().getCallbacks()) {
+            // The snapshot only has the first page
+            if (cb.getPageToBindSynchronously() != 0) {
+                return false;
+            }
+        }
+        WorkspaceSnapshot.Content snapshot = mBgDataModel.workspaceSnapshot.read(mApp);
+        if (snapshot == null) {
+            return false;
+        }
+        verifyNotStopped();
+        mResults.bindWorkspaceSnapshot(snapshot);
+        return true;
+    }
+
     public synchronized void stopLocked() {
         mStopped = true;
         this.notify();
@@ -367,6 +420,7 @@ public class LoaderTask implements Runnable {
             final Bundle extras = c.getExtras();
             mDbName = extras == null
                     ? null : extras.getString(LauncherSettings.Settings.EXTRA_DB_NAME);
+            mBgDataModel.dbName = mDbName;
             try {
                 final int appWidgetIdIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.APPWIDGET_ID);
@@ -410,6 +464,8 @@ public class LoaderTask implements Runnable {
                     unlockedUsers.put(serialNo, userUnlocked);
                 }
 
+                c.preloadAppIcons();
+
                 WorkspaceItemInfo info;
                 LauncherAppWidgetInfo appWidgetInfo;
                 LauncherAppWidgetProviderInfo widgetProviderInfo;
@@ -825,6 +881,7 @@ public class LoaderTask implements Runnable {
             // Sort the folder items, update ranks, and make sure all preview items are high res.
             FolderGridOrganizer verifier =
                     new FolderGridOrganizer(mApp.getInvariantDeviceProfile());
+            ArrayList<WorkspaceItemInfo> previewItems = new ArrayList<>();
             for (FolderInfo folder : mBgDataModel.folders) {
                 Collections.sort(folder.contents, Folder.ITEM_POS_COMPARATOR);
                 verifier.setFolderInfo(folder);
@@ -840,10 +897,20 @@ public class LoaderTask implements Runnable {
                     if (info.usingLowResIcon()
                             && info.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION
                             && verifier.isItemInPreview(info.rank)) {
-                        mIconCache.getTitleAndIcon(info, false);
+                        previewItems.add(info);
                     }
                 }
             }
+            ArrayList<ComponentKey> previewKeys = new ArrayList<>(previewItems.size());
+            for (WorkspaceItemInfo info : previewItems) {
+                if (info.getTargetComponent() != null) {
+                    previewKeys.add(new ComponentKey(info.getTargetComponent(), info.user));
+                }
+            }
+            mIconCache.preloadEntries(previewKeys, false /* useLowResIcon */);
+            for (WorkspaceItemInfo info : previewItems) {
+                mIconCache.getTitleAndIcon(info, false);
+            }
 
             c.commitRestoredItems();
         }
@@ -907,17 +974,23 @@ public class LoaderTask implements Runnable {
     private List<LauncherActivityInfo> loadAllApps() {
         final List<UserHandle> profiles = mUserCache.getUserProfiles();
         List<LauncherActivityInfo> allActivityList = new ArrayList<>();
+        Map<UserHandle, List<LauncherActivityInfo>> prefetched =
+                mPrefetch == null ? null : mPrefetch.getActivityLists();
         // Clear the list of apps
         mBgAllAppsList.clear();
         for (UserHandle user : profiles) {
             // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            List<LauncherActivityInfo> apps = prefetched == null ? null : prefetched.get(user);
+            if (apps == null) {
+                apps = mLauncherApps.getActivityList(null, user);
+            }
             // Fail if we don't have any apps
             // TODO: Fix this. Only fail for the current user.
             if (apps == null || apps.isEmpty()) {
                 return allActivityList;
             }
             boolean quietMode = mUserManagerState.isUserQuiet(user);
+            mBgAllAppsList.preloadIcons(apps, user);
             // Create the ApplicationInfos
             for (int i = 0; i < apps.size(); i++) {
                 LauncherActivityInfo app = apps.get(i);
@@ -953,10 +1026,16 @@ public class LoaderTask implements Runnable {
         mBgDataModel.deepShortcutMap.clear();
 
         if (mBgAllAppsList.hasShortcutHostPermission()) {
+            Map<UserHandle, List<ShortcutInfo>> prefetched =
+                    mPrefetch == null ? null : mPrefetch.getDeepShortcuts();
             for (UserHandle user : mUserCache.getUserProfiles()) {
                 if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfo> shortcuts = new ShortcutRequest(mApp.getContext(), user)
-                            .query(ShortcutRequest.ALL);
+                    List<ShortcutInfo> shortcuts =
+                            prefetched == null ? null : prefetched.get(user);
+                    if (shortcuts == null) {
+                        shortcuts = new ShortcutRequest(mApp.getContext(), user)
+                                .query(ShortcutRequest.ALL);
+                    }
                     allShortcuts.addAll(shortcuts);
                     mBgDataModel.updateDeepShortcutCounts(null, user, shortcuts);
                 }
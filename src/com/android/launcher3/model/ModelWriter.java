@@ -25,6 +25,7 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.android.launcher3.LauncherAppState;
@@ -44,6 +45,7 @@ import com.android.launcher3.util.ContentWriter;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.widget.LauncherAppWidgetHost;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -55,11 +57,21 @@ import java.util.stream.StreamSupport;
 
 /**
  * Class for handling model updates.
+ *
+ * Item additions and updates requested while handling a single UI event, like a drop or a
+ * folder reorder, are written together in one {@link ContentResolver#applyBatch} transaction
+ * on the model thread. Other writes are kept in order with them, and {@link LauncherModel}
+ * flushes the batch before it enqueues any model work.
  */
 public class ModelWriter {
 
     private static final String TAG = "ModelWriter";
 
+    // The stack of the callers is only kept to report inconsistent writes on debug devices
+    private static final boolean CAPTURE_STACK_TRACES = Utilities.IS_DEBUG_DEVICE;
+
+    private static final WriteStats sWriteStats = new WriteStats();
+
     private final Context mContext;
     private final LauncherModel mModel;
     private final BgDataModel mBgDataModel;
@@ -72,6 +84,10 @@ public class ModelWriter {
     private final List<Runnable> mDeleteRunnables = new ArrayList<>();
     private boolean mPreparingToUndo;
 
+    // Writes waiting to be sent to the model thread as a single batch
+    private final ArrayList<UpdateItemBaseRunnable> mPendingUpdates = new ArrayList<>();
+    private final Runnable mFlushPendingUpdates = this::flushPendingUpdates;
+
     public ModelWriter(Context context, LauncherModel model, BgDataModel dataModel,
                        boolean hasVerticalHotseat, boolean verifyChanges) {
         mContext = context;
@@ -197,7 +213,7 @@ public class ModelWriter {
         item.spanX = spanX;
         item.spanY = spanY;
 
-        ((Executor) MODEL_EXECUTOR).execute(new UpdateItemRunnable(item, () ->
+        enqueueUpdate(new UpdateItemRunnable(item, () ->
                 new ContentWriter(mContext)
                         .put(Favorites.CONTAINER, item.container)
                         .put(Favorites.CELLX, item.cellX)
@@ -212,7 +228,7 @@ public class ModelWriter {
      * Update an item to the database in a specified container.
      */
     public void updateItemInDatabase(ItemInfo item) {
-        ((Executor) MODEL_EXECUTOR).execute(new UpdateItemRunnable(item, () -> {
+        enqueueUpdate(new UpdateItemRunnable(item, () -> {
             ContentWriter writer = new ContentWriter(mContext);
             item.onAddToDatabase(writer);
             return writer;
@@ -230,23 +246,7 @@ public class ModelWriter {
         final ContentResolver cr = mContext.getContentResolver();
         item.id = Settings.call(cr, Settings.METHOD_NEW_ITEM_ID).getInt(Settings.EXTRA_VALUE);
 
-        ModelVerifier verifier = new ModelVerifier();
-        final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
-        ((Executor) MODEL_EXECUTOR).execute(() -> {
-            // Write the item on background thread, as some properties might have been updated in
-            // the background.
-            final ContentWriter writer = new ContentWriter(mContext);
-            item.onAddToDatabase(writer);
-            writer.put(Favorites._ID, item.id);
-
-            cr.insert(Favorites.CONTENT_URI, writer.getValues(mContext));
-
-            synchronized (mBgDataModel) {
-                checkItemInfoLocked(item.id, item, stackTrace);
-                mBgDataModel.addItem(mContext, item, true);
-                verifier.verifyModel();
-            }
-        });
+        enqueueUpdate(new AddItemRunnable(item));
     }
 
     /**
@@ -341,29 +341,147 @@ public class ModelWriter {
         if (mPreparingToUndo) {
             mDeleteRunnables.add(r);
         } else {
-            ((Executor) MODEL_EXECUTOR).execute(r);
+            execute(r);
         }
     }
 
     public void commitDelete() {
         mPreparingToUndo = false;
         for (Runnable runnable : mDeleteRunnables) {
-            ((Executor) MODEL_EXECUTOR).execute(runnable);
+            execute(runnable);
         }
         mDeleteRunnables.clear();
     }
 
+    /**
+     * Runs {@param r} on the model thread, after the writes requested before it.
+     */
+    private void execute(Runnable r) {
+        if (r instanceof UpdateItemBaseRunnable) {
+            enqueueUpdate((UpdateItemBaseRunnable) r);
+        } else {
+            flushPendingUpdates();
+            ((Executor) MODEL_EXECUTOR).execute(r);
+        }
+    }
+
+    /**
+     * Adds {@param update} to the batch sent to the model thread once the current UI event is
+     * handled. Writes requested from other threads are sent right away.
+     */
+    private void enqueueUpdate(UpdateItemBaseRunnable update) {
+        boolean onUiThread = Looper.myLooper() == mUiHandler.getLooper();
+        synchronized (mPendingUpdates) {
+            mPendingUpdates.add(update);
+            if (onUiThread && mPendingUpdates.size() == 1) {
+                mUiHandler.post(mFlushPendingUpdates);
+            }
+        }
+        if (!onUiThread) {
+            flushPendingUpdates();
+        }
+    }
+
+    /**
+     * Sends the writes waiting for the end of the current UI event to the model thread, so that
+     * they are applied before any model work enqueued after this call.
+     */
+    public void flush() {
+        flushPendingUpdates();
+    }
+
+    private void flushPendingUpdates() {
+        ArrayList<UpdateItemBaseRunnable> updates;
+        synchronized (mPendingUpdates) {
+            if (mPendingUpdates.isEmpty()) {
+                return;
+            }
+            updates = new ArrayList<>(mPendingUpdates);
+            mPendingUpdates.clear();
+        }
+        mUiHandler.removeCallbacks(mFlushPendingUpdates);
+        ((Executor) MODEL_EXECUTOR).execute(() -> applyUpdates(updates));
+    }
+
+    private void applyUpdates(List<UpdateItemBaseRunnable> updates) {
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        for (UpdateItemBaseRunnable update : updates) {
+            update.addOperations(ops);
+        }
+        if (!applyBatch(ops)) {
+            return;
+        }
+        for (UpdateItemBaseRunnable update : updates) {
+            update.onApplied();
+        }
+    }
+
+    /**
+     * Applies {@param ops} in one transaction.
+     *
+     * @return false if the transaction was rolled back. The model is then reloaded from the DB,
+     * as the UI already shows the writes which were lost.
+     */
+    private boolean applyBatch(ArrayList<ContentProviderOperation> ops) {
+        try {
+            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
+            sWriteStats.onBatchApplied(ops.size());
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing items", e);
+            mModel.forceReload();
+            return false;
+        }
+    }
+
+    /**
+     * Prints the number of writes and batches applied by all the writers.
+     */
+    public static void dumpStats(String prefix, PrintWriter writer) {
+        sWriteStats.dump(prefix, writer);
+    }
+
     /**
      * Aborts a previous delete operation pending commit
      */
     public void abortDelete() {
         mPreparingToUndo = false;
         mDeleteRunnables.clear();
+        // Let the reload see the other writes
+        flushPendingUpdates();
         // We do a full reload here instead of just a rebind because Folders change their internal
         // state when dragging an item out, which clobbers the rebind unless we load from the DB.
         mModel.forceReload();
     }
 
+    private class AddItemRunnable extends UpdateItemBaseRunnable {
+        private final ItemInfo mItem;
+
+        AddItemRunnable(ItemInfo item) {
+            mItem = item;
+        }
+
+        @Override
+        void addOperations(ArrayList<ContentProviderOperation> ops) {
+            // Write the item on background thread, as some properties might have been updated in
+            // the background.
+            final ContentWriter writer = new ContentWriter(mContext);
+            mItem.onAddToDatabase(writer);
+            writer.put(Favorites._ID, mItem.id);
+            ops.add(ContentProviderOperation.newInsert(Favorites.CONTENT_URI)
+                    .withValues(writer.getValues(mContext)).build());
+        }
+
+        @Override
+        void onApplied() {
+            synchronized (mBgDataModel) {
+                checkItemInfoLocked(mItem.id, mItem, mStackTrace);
+                mBgDataModel.addItem(mContext, mItem, true);
+                mVerifier.verifyModel();
+            }
+        }
+    }
+
     private class UpdateItemRunnable extends UpdateItemBaseRunnable {
         private final ItemInfo mItem;
         private final Supplier<ContentWriter> mWriter;
@@ -376,10 +494,13 @@ public class ModelWriter {
         }
 
         @Override
-        public void run() {
-            Uri uri = Favorites.getContentUri(mItemId);
-            mContext.getContentResolver().update(uri, mWriter.get().getValues(mContext),
-                    null, null);
+        void addOperations(ArrayList<ContentProviderOperation> ops) {
+            ops.add(ContentProviderOperation.newUpdate(Favorites.getContentUri(mItemId))
+                    .withValues(mWriter.get().getValues(mContext)).build());
+        }
+
+        @Override
+        void onApplied() {
             updateItemArrays(mItem, mItemId);
         }
     }
@@ -387,39 +508,61 @@ public class ModelWriter {
     private class UpdateItemsRunnable extends UpdateItemBaseRunnable {
         private final ArrayList<ContentValues> mValues;
         private final ArrayList<ItemInfo> mItems;
+        private final int[] mItemIds;
 
         UpdateItemsRunnable(ArrayList<ItemInfo> items, ArrayList<ContentValues> values) {
             mValues = values;
             mItems = items;
+            mItemIds = new int[items.size()];
+            for (int i = 0; i < mItemIds.length; i++) {
+                mItemIds[i] = items.get(i).id;
+            }
         }
 
         @Override
-        public void run() {
-            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-            int count = mItems.size();
-            for (int i = 0; i < count; i++) {
-                ItemInfo item = mItems.get(i);
-                final int itemId = item.id;
-                final Uri uri = Favorites.getContentUri(itemId);
-                ContentValues values = mValues.get(i);
-
-                ops.add(ContentProviderOperation.newUpdate(uri).withValues(values).build());
-                updateItemArrays(item, itemId);
+        void addOperations(ArrayList<ContentProviderOperation> ops) {
+            for (int i = 0; i < mItemIds.length; i++) {
+                ops.add(ContentProviderOperation.newUpdate(Favorites.getContentUri(mItemIds[i]))
+                        .withValues(mValues.get(i)).build());
             }
-            try {
-                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
-            } catch (Exception e) {
-                e.printStackTrace();
+        }
+
+        @Override
+        void onApplied() {
+            for (int i = 0; i < mItemIds.length; i++) {
+                updateItemArrays(mItems.get(i), mItemIds[i]);
             }
         }
     }
 
+    /**
+     * A write of one or more items, which can be applied alone or as part of a larger batch.
+     */
     private abstract class UpdateItemBaseRunnable implements Runnable {
-        private final StackTraceElement[] mStackTrace;
-        private final ModelVerifier mVerifier = new ModelVerifier();
+        protected final StackTraceElement[] mStackTrace;
+        protected final ModelVerifier mVerifier = new ModelVerifier();
 
         UpdateItemBaseRunnable() {
-            mStackTrace = new Throwable().getStackTrace();
+            mStackTrace = CAPTURE_STACK_TRACES ? new Throwable().getStackTrace() : null;
+        }
+
+        /**
+         * Adds the DB operations of this write to {@param ops}, on the model thread.
+         */
+        abstract void addOperations(ArrayList<ContentProviderOperation> ops);
+
+        /**
+         * Updates the model once the DB operations are applied.
+         */
+        abstract void onApplied();
+
+        @Override
+        public void run() {
+            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+            addOperations(ops);
+            if (applyBatch(ops)) {
+                onApplied();
+            }
         }
 
         protected void updateItemArrays(ItemInfo item, int itemId) {
@@ -466,6 +609,52 @@ public class ModelWriter {
         }
     }
 
+    /**
+     * Counters of the batches applied, shared by all the writers.
+     */
+    private static class WriteStats {
+
+        private int mBatchCount;
+        private int mWriteCount;
+        private int mMaxBatchSize;
+
+        private long mFirstBatchTime;
+        private long mSecondStartTime;
+        private int mWritesThisSecond;
+        private int mMaxWritesPerSecond;
+
+        synchronized void onBatchApplied(int size) {
+            long now = SystemClock.uptimeMillis();
+            if (mBatchCount == 0) {
+                mFirstBatchTime = now;
+            }
+            if (now - mSecondStartTime >= 1000) {
+                mSecondStartTime = now;
+                mWritesThisSecond = 0;
+            }
+            mWritesThisSecond += size;
+            mMaxWritesPerSecond = Math.max(mMaxWritesPerSecond, mWritesThisSecond);
+
+            mBatchCount++;
+            mWriteCount += size;
+            mMaxBatchSize = Math.max(mMaxBatchSize, size);
+        }
+
+        synchronized void dump(String prefix, PrintWriter writer) {
+            long elapsedSeconds = Math.max(1,
+                    (SystemClock.uptimeMillis() - mFirstBatchTime) / 1000);
+            writer.println(prefix + "ModelWriter stats:"
+                    + " batches=" + mBatchCount
+                    + " writes=" + mWriteCount
+                    + " averageBatchSize="
+                    + (mBatchCount == 0 ? 0 : (float) mWriteCount / mBatchCount)
+                    + " maxBatchSize=" + mMaxBatchSize
+                    + " writesPerSecond=" + (mBatchCount == 0 ? 0
+                    : (float) mWriteCount / elapsedSeconds)
+                    + " maxWritesPerSecond=" + mMaxWritesPerSecond);
+        }
+    }
+
     /**
      * Utility class to verify model updates are propagated properly to the callback.
      */
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_FOLDER;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.UserHandle;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.Workspace;
+import com.android.launcher3.icons.BitmapInfo;
+import com.android.launcher3.icons.IconCache;
+import com.android.launcher3.model.data.FolderInfo;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.shortcuts.ShortcutKey;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.IntSparseArrayMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compact copy of the hotseat and of the first workspace screen, written once the workspace is
+ * bound, so that a cold start can show it while {@link LoaderTask} reads the favorites DB. The
+ * snapshot is replaced as a whole by the real workspace as soon as that is bound.
+ *
+ * Only apps, deep shortcuts and folders of those are kept. Items only store the key of their
+ * icon, which is read back from the icon cache DB. The snapshot is ignored if the grid changed
+ * since it was written.
+ */
+public class WorkspaceSnapshot {
+
+    private static final String TAG = "WorkspaceSnapshot";
+
+    private static final int MAGIC = 0x57534e50; // WSNP
+    private static final int FORMAT_VERSION = 1;
+    // Upper bound of the item count, anything above means the file is corrupt
+    private static final int MAX_ITEMS = 1000;
+
+    // Content of the last written file, to skip identical writes
+    private byte[] mLastWritten;
+
+    /**
+     * Items of a snapshot, ready to be bound
+     */
+    public static class Content {
+
+        public final int screenId;
+        public final ArrayList<ItemInfo> items;
+
+        Content(int screenId, ArrayList<ItemInfo> items) {
+            this.screenId = screenId;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Persists the first screen of {@param dataModel}.
+     */
+    @WorkerThread
+    public void write(LauncherAppState app, BgDataModel dataModel) {
+        Context context = app.getContext();
+        InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
+        UserCache userCache = UserCache.INSTANCE.get(context);
+
+        ArrayList<ItemInfo> items = new ArrayList<>();
+        int screenId = Workspace.FIRST_SCREEN_ID;
+        synchronized (dataModel) {
+            for (ItemInfo item : dataModel.getFirstScreenItems()) {
+                if (item instanceof FolderInfo) {
+                    items.add(item);
+                    for (WorkspaceItemInfo child : ((FolderInfo) item).contents) {
+                        if (getIconKey(child) != null) {
+                            items.add(child);
+                        }
+                    }
+                } else if (item instanceof WorkspaceItemInfo && getIconKey(item) != null) {
+                    items.add(item);
+                } else {
+                    continue;
+                }
+                if (item.container == CONTAINER_DESKTOP) {
+                    screenId = item.screenId;
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(idp.numRows);
+            out.writeInt(idp.numColumns);
+            out.writeInt(idp.numDatabaseHotseatIcons);
+            out.writeInt(screenId);
+            out.writeInt(items.size());
+            for (ItemInfo item : items) {
+                writeItem(out, item, userCache);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to serialize workspace snapshot", e);
+            return;
+        }
+
+        byte[] data = bytes.toByteArray();
+        if (Arrays.equals(data, mLastWritten)) {
+            return;
+        }
+        AtomicFile file = getFile(context, idp);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            fos.write(data);
+            file.finishWrite(fos);
+            mLastWritten = data;
+        } catch (IOException e) {
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+            Log.e(TAG, "Unable to write workspace snapshot", e);
+        }
+    }
+
+    /**
+     * Reads the last snapshot written for the current grid, or returns null if there is none.
+     */
+    @WorkerThread
+    @Nullable
+    public Content read(LauncherAppState app) {
+        Context context = app.getContext();
+        InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
+        UserCache userCache = UserCache.INSTANCE.get(context);
+        IconCache iconCache = app.getIconCache();
+
+        AtomicFile file = getFile(context, idp);
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || in.readInt() != idp.numRows || in.readInt() != idp.numColumns
+                    || in.readInt() != idp.numDatabaseHotseatIcons) {
+                return null;
+            }
+            int screenId = in.readInt();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ITEMS) {
+                throw new IOException("Invalid item count " + count);
+            }
+            ArrayList<ItemInfo> items = new ArrayList<>(count);
+            IntSparseArrayMap<FolderInfo> folders = new IntSparseArrayMap<>();
+            for (int i = 0; i < count; i++) {
+                ItemInfo item = readItem(in, userCache, iconCache);
+                if (item == null) {
+                    continue;
+                }
+                if (item instanceof FolderInfo) {
+                    folders.put(item.id, (FolderInfo) item);
+                }
+                FolderInfo folder = folders.get(item.container);
+                if (folder != null) {
+                    if (!(item instanceof WorkspaceItemInfo)) {
+                        throw new IOException("Invalid folder content " + item.itemType);
+                    }
+                    folder.add((WorkspaceItemInfo) item, false);
+                } else {
+                    items.add(item);
+                }
+            }
+            return new Content(screenId, items);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // The file is corrupt, it will be written again once the workspace is bound
+            Log.e(TAG, "Unable to read workspace snapshot", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static void writeItem(DataOutputStream out, ItemInfo item, UserCache userCache)
+            throws IOException {
+        out.writeInt(item.itemType);
+        out.writeInt(item.id);
+        out.writeInt(item.container);
+        out.writeInt(item.screenId);
+        out.writeInt(item.cellX);
+        out.writeInt(item.cellY);
+        out.writeInt(item.spanX);
+        out.writeInt(item.spanY);
+        out.writeInt(item.rank);
+        out.writeLong(userCache.getSerialNumberForUser(item.user));
+        out.writeUTF(item.title == null ? "" : item.title.toString());
+
+        Intent intent = item.getIntent();
+        out.writeUTF(intent == null ? "" : intent.toUri(0));
+        ComponentName iconKey = getIconKey(item);
+        out.writeUTF(iconKey == null ? "" : iconKey.flattenToString());
+    }
+
+    @Nullable
+    private static ItemInfo readItem(DataInputStream in, UserCache userCache,
+            IconCache iconCache) throws IOException {
+        int itemType = in.readInt();
+        int id = in.readInt();
+        int container = in.readInt();
+        int screenId = in.readInt();
+        int cellX = in.readInt();
+        int cellY = in.readInt();
+        int spanX = in.readInt();
+        int spanY = in.readInt();
+        int rank = in.readInt();
+        UserHandle user = userCache.getUserForSerialNumber(in.readLong());
+        String title = in.readUTF();
+        String intentUri = in.readUTF();
+        ComponentName iconKey = ComponentName.unflattenFromString(in.readUTF());
+        if (user == null) {
+            // The profile was removed
+            return null;
+        }
+
+        final ItemInfo item;
+        if (itemType == ITEM_TYPE_FOLDER) {
+            item = new FolderInfo();
+        } else {
+            WorkspaceItemInfo info = new WorkspaceItemInfo();
+            try {
+                info.intent = Intent.parseUri(intentUri, 0);
+            } catch (URISyntaxException e) {
+                return null;
+            }
+            BitmapInfo icon = iconKey == null
+                    ? null : iconCache.getCachedIcon(new ComponentKey(iconKey, user));
+            info.bitmap = icon != null ? icon : iconCache.getDefaultIcon(user);
+            item = info;
+        }
+        item.itemType = itemType;
+        item.id = id;
+        item.container = container;
+        item.screenId = screenId;
+        item.cellX = cellX;
+        item.cellY = cellY;
+        item.spanX = spanX;
+        item.spanY = spanY;
+        item.rank = rank;
+        item.user = user;
+        item.title = title;
+        return item;
+    }
+
+    /**
+     * Returns the key of the icon of {@param item} in the icon cache, or null if the item
+     * isn't supported in snapshots.
+     */
+    @Nullable
+    private static ComponentName getIconKey(ItemInfo item) {
+        switch (item.itemType) {
+            case ITEM_TYPE_APPLICATION:
+                return item.getTargetComponent();
+            case ITEM_TYPE_DEEP_SHORTCUT:
+                return item.getIntent() == null
+                        ? null : ShortcutKey.fromItemInfo(item).componentName;
+            default:
+                return null;
+        }
+    }
+
+    private static AtomicFile getFile(Context context, InvariantDeviceProfile idp) {
+        return new AtomicFile(context.getFileStreamPath(idp.dbFile + ".snapshot"));
+    }
+}
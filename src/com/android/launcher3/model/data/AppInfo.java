@@ -36,8 +36,12 @@ import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.pm.PackageInstallInfo;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.LabelComparator;
 import com.android.launcher3.util.PackageManagerHelper;
+import com.saggitt.omega.allapps.AppColorComparator;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.Comparator;
 
 /**
@@ -61,6 +65,12 @@ public class AppInfo extends ItemInfoWithIcon {
     // Section name used for indexing.
     public String sectionName = "";
 
+    // Sort keys, computed once and only refreshed when the color or title they came from changes
+    private int mColorSortKey;
+    private int mColorSortKeyColor;
+    private boolean mHasColorSortKey;
+    private TitleSortKey mTitleSortKey;
+
     public AppInfo() {
         itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
     }
@@ -155,6 +165,50 @@ public class AppInfo extends ItemInfoWithIcon {
                         | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
     }
 
+    /**
+     * Computes the sort key of {@link #iconColor}, called when the icon is applied from the cache.
+     */
+    public void updateColorSortKey() {
+        mColorSortKey = AppColorComparator.getColorSortKey(iconColor);
+        mColorSortKeyColor = iconColor;
+        mHasColorSortKey = true;
+    }
+
+    /**
+     * Returns the packed hue/lightness/saturation bucket of {@link #iconColor}.
+     *
+     * @see AppColorComparator#getColorSortKey(int)
+     */
+    public int getColorSortKey() {
+        if (!mHasColorSortKey || mColorSortKeyColor != iconColor) {
+            updateColorSortKey();
+        }
+        return mColorSortKey;
+    }
+
+    /**
+     * Returns the collation key of {@link #title} for {@param collator}, usually
+     * {@link LabelComparator#getCollator()}, cached until either the title or the collator
+     * changes.
+     */
+    public CollationKey getTitleCollationKey(Collator collator) {
+        // Read once, as apps are sorted both on the model and on the UI thread
+        TitleSortKey sortKey = mTitleSortKey;
+        if (sortKey == null || sortKey.title != title || sortKey.collator != collator) {
+            sortKey = new TitleSortKey(title, collator);
+            mTitleSortKey = sortKey;
+        }
+        return sortKey.key;
+    }
+
+    /**
+     * Returns whether the title starts with a linguistic letter or digit.
+     */
+    public boolean titleStartsWithLetter() {
+        return title != null && title.length() > 0
+                && Character.isLetterOrDigit(Character.codePointAt(title, 0));
+    }
+
     @Nullable
     @Override
     public ComponentName getTargetComponent() {
@@ -186,4 +240,22 @@ public class AppInfo extends ItemInfoWithIcon {
     public AppInfo clone() {
         return new AppInfo(this);
     }
+
+    /**
+     * Collation key of a title, along with the title and the collator it was computed from.
+     */
+    private static class TitleSortKey {
+
+        final CharSequence title;
+        final Collator collator;
+        final CollationKey key;
+
+        TitleSortKey(CharSequence title, Collator collator) {
+            this.title = title;
+            this.collator = collator;
+            synchronized (collator) {
+                key = collator.getCollationKey(title == null ? "" : title.toString());
+            }
+        }
+    }
 }
@@ -17,6 +17,7 @@
 package com.android.launcher3.search;
 
 import java.text.Collator;
+import java.util.Arrays;
 
 /**
  * Utilities for matching query string to target string.
@@ -58,6 +59,60 @@ public class StringMatcherUtility {
         return false;
     }
 
+    /**
+     * Same as {@link #matches(String, String, StringMatcher)}, using the word breaks of
+     * {@code target} previously computed by {@link #getWordBreaks}.
+     */
+    public static boolean matches(String query, String target, int[] breaks,
+            StringMatcher matcher) {
+        int queryLength = query.length();
+        int targetLength = target.length();
+        if (targetLength < queryLength || queryLength <= 0) {
+            return false;
+        }
+
+        if (requestSimpleFuzzySearch(query)) {
+            return target.toLowerCase().contains(query);
+        }
+
+        int end = targetLength - queryLength;
+        for (int i = 0; i < breaks.length && breaks[i] <= end; i++) {
+            int start = breaks[i];
+            if (matcher.matches(query, target.substring(start, start + queryLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the indices of {@code target} where {@link #matches} would try to match a query,
+     * in increasing order. The result only depends on {@code target}, so it can be computed
+     * once and reused for every query.
+     */
+    public static int[] getWordBreaks(String target) {
+        int targetLength = target.length();
+        if (targetLength == 0) {
+            return new int[0];
+        }
+        int[] breaks = new int[targetLength];
+        int count = 0;
+
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(target.codePointAt(0));
+        for (int i = 0; i < targetLength; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (targetLength - 1)
+                    ? Character.getType(target.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (isBreak(thisType, lastType, nextType)) {
+                breaks[count++] = i;
+            }
+        }
+        return Arrays.copyOf(breaks, count);
+    }
+
     /**
      * Returns true if the current point should be a break point. Following cases
      * are considered as break points:
@@ -147,7 +202,7 @@ public class StringMatcherUtility {
     /**
      * Matching optimization to search in Chinese.
      */
-    private static boolean requestSimpleFuzzySearch(String s) {
+    public static boolean requestSimpleFuzzySearch(String s) {
         for (int i = 0; i < s.length(); ) {
             int codepoint = s.codePointAt(i);
             i += Character.charCount(codepoint);
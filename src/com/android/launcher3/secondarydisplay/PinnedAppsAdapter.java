@@ -149,7 +149,7 @@ public class PinnedAppsAdapter extends BaseAdapter implements OnSharedPreference
         mItems.clear();
         mPinnedApps.stream().map(mAllAppsList::getApp)
                 .filter(Objects::nonNull).forEach(mItems::add);
-        mItems.sort(mAppNameComparator);
+        mAppNameComparator.sort(mItems);
         notifyDataSetChanged();
     }
 
@@ -63,8 +63,8 @@ import com.android.launcher3.widget.LauncherAppWidgetProviderInfo;
 import com.android.launcher3.widget.PendingAppWidgetHostView;
 import com.android.launcher3.widget.WidgetAddFlowHandler;
 import com.android.launcher3.widget.WidgetManagerHelper;
+import com.saggitt.omega.allapps.AppLaunchRecorder;
 import com.saggitt.omega.util.Config;
-import com.saggitt.omega.util.DbHelper;
 
 /**
  * Class for handling clicks on workspace and all-apps items
@@ -95,7 +95,8 @@ public class ItemClickHandler {
             }
         } else if (tag instanceof AppInfo) {
             startAppShortcutOrInfoActivity(v, (AppInfo) tag, launcher);
-            if (Utilities.getOmegaPrefs(v.getContext()).getSortMode() == Config.SORT_MOST_USED) {
+            int sortMode = Utilities.getOmegaPrefs(v.getContext()).getSortMode();
+            if (sortMode == Config.SORT_MOST_USED || sortMode == Config.SORT_MOST_USED_RECENT) {
                 Utilities.getOmegaPrefs(v.getContext()).reloadApps();
                 Log.d(TAG, "Sort Mode Most Used");
             }
@@ -329,12 +330,11 @@ public class ItemClickHandler {
             FloatingIconView.fetchIcon(launcher, v, item, true /* isOpening */);
         }
         if (item instanceof AppInfo) {
-            DbHelper db = new DbHelper(launcher.getApplicationContext());
-            db.updateAppCount(((AppInfo) item).componentName.getPackageName());
+            AppLaunchRecorder.INSTANCE.get(launcher)
+                    .recordLaunch(((AppInfo) item).componentName.getPackageName());
             isProtected = Config.Companion.isAppProtected(launcher.getApplicationContext(),
                     ((AppInfo) item).toComponentKey()) &&
                     Utilities.getOmegaPrefs(launcher.getApplicationContext()).getEnableProtectedApps();
-            db.close();
         }
 
         if (isProtected && Utilities.ATLEAST_R) {
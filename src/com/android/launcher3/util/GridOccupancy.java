@@ -6,18 +6,46 @@ import com.android.launcher3.model.data.ItemInfo;
 
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Each row is kept as a bitmask, so that marking cells is one operation per row. Region
+ * queries use a summed-area table of the occupied cells, which is rebuilt lazily after the
+ * grid changes, so that checking a region is O(1) whatever its size.
  */
 public class GridOccupancy {
 
     private final int mCountX;
     private final int mCountY;
 
-    public final boolean[][] cells;
+    // Bit x of mRows[y] is set if the cell (x, y) is occupied
+    private final long[] mRows;
+
+    // Number of occupied cells in [0, x) * [0, y), at index y * (mCountX + 1) + x
+    private final int[] mAreaSums;
+    private boolean mAreaSumsValid = true;
 
     public GridOccupancy(int countX, int countY) {
+        if (countX > Long.SIZE) {
+            throw new IllegalArgumentException("Grid too wide: " + countX);
+        }
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mRows = new long[countY];
+        mAreaSums = new int[(countX + 1) * (countY + 1)];
+    }
+
+    public int getCountX() {
+        return mCountX;
+    }
+
+    public int getCountY() {
+        return mCountY;
+    }
+
+    public boolean isOccupied(int x, int y) {
+        if (x < 0 || x >= mCountX) {
+            throw new ArrayIndexOutOfBoundsException(x);
+        }
+        return (mRows[y] & (1L << x)) != 0;
     }
 
     /**
@@ -32,15 +60,7 @@ public class GridOccupancy {
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
         for (int y = 0; (y + spanY) <= mCountY; y++) {
             for (int x = 0; (x + spanX) <= mCountX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
+                if (isRegionVacant(x, y, spanX, spanY)) {
                     vacantOut[0] = x;
                     vacantOut[1] = y;
                     return true;
@@ -51,36 +71,56 @@ public class GridOccupancy {
     }
 
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
-            }
+        long mask = rowMask(0, mCountX);
+        for (int y = 0; y < mCountY; y++) {
+            dest.mRows[y] = (dest.mRows[y] & ~mask) | mRows[y];
         }
+        dest.mAreaSumsValid = false;
     }
 
     public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
-        int x2 = x + spanX - 1;
-        int y2 = y + spanY - 1;
-        if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
+        int x2 = x + spanX;
+        int y2 = y + spanY;
+        if (x < 0 || y < 0 || x2 > mCountX || y2 > mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
-                    return false;
-                }
+        if (!mAreaSumsValid) {
+            updateAreaSums();
+        }
+        int stride = mCountX + 1;
+        return mAreaSums[y2 * stride + x2] - mAreaSums[y * stride + x2]
+                - mAreaSums[y2 * stride + x] + mAreaSums[y * stride + x] == 0;
+    }
+
+    /**
+     * Returns true if a cell which is occupied in the top left {@param spanX}x{@param spanY}
+     * region of {@param block} is also occupied in this grid, once that region is moved to
+     * ({@param x}, {@param y}). The moved region must be within the grid.
+     */
+    public boolean overlaps(GridOccupancy block, int x, int y, int spanX, int spanY) {
+        long mask = rowMask(0, spanX);
+        for (int j = 0; j < spanY; j++) {
+            if (((mRows[y + j] >>> x) & block.mRows[j] & mask) != 0) {
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        int x2 = Math.min(cellX + spanX, mCountX);
+        int y2 = Math.min(cellY + spanY, mCountY);
+        if (cellX >= x2 || cellY >= y2) return;
+        long mask = rowMask(cellX, x2);
+        for (int y = cellY; y < y2; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
             }
         }
+        mAreaSumsValid = false;
     }
 
     public void markCells(Rect r, boolean value) {
@@ -98,4 +138,30 @@ public class GridOccupancy {
     public void clear() {
         markCells(0, 0, mCountX, mCountY, false);
     }
+
+    private void updateAreaSums() {
+        int stride = mCountX + 1;
+        for (int y = 0; y < mCountY; y++) {
+            long row = mRows[y];
+            int rowSum = 0;
+            int above = y * stride;
+            int index = above + stride;
+            for (int x = 0; x < mCountX; x++) {
+                rowSum += (int) ((row >>> x) & 1);
+                mAreaSums[index + x + 1] = mAreaSums[above + x + 1] + rowSum;
+            }
+        }
+        mAreaSumsValid = true;
+    }
+
+    /**
+     * Returns the mask of the columns in [x1, x2)
+     */
+    private static long rowMask(int x1, int x2) {
+        if (x2 <= x1) {
+            return 0;
+        }
+        long mask = x2 - x1 == Long.SIZE ? -1L : (1L << (x2 - x1)) - 1;
+        return mask << x1;
+    }
 }
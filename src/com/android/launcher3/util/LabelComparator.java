@@ -17,6 +17,7 @@ package com.android.launcher3.util;
 
 import java.text.Collator;
 import java.util.Comparator;
+import java.util.Locale;
 
 /**
  * Extension of {@link java.text.Collator} with special handling for digits. Used for comparing
@@ -24,7 +25,21 @@ import java.util.Comparator;
  */
 public class LabelComparator implements Comparator<String> {
 
-    private final Collator mCollator = Collator.getInstance();
+    private static Collator sCollator;
+    private static Locale sCollatorLocale;
+
+    /**
+     * Returns the collator shared by all the label sorts, which is created again when the
+     * default locale changes. Collators aren't thread safe, so callers must synchronize on it.
+     */
+    public static synchronized Collator getCollator() {
+        Locale locale = Locale.getDefault();
+        if (sCollator == null || !locale.equals(sCollatorLocale)) {
+            sCollator = Collator.getInstance(locale);
+            sCollatorLocale = locale;
+        }
+        return sCollator;
+    }
 
     @Override
     public int compare(String titleA, String titleB) {
@@ -41,6 +56,9 @@ public class LabelComparator implements Comparator<String> {
         }
 
         // Order by the title in the current locale
-        return mCollator.compare(titleA, titleB);
+        Collator collator = getCollator();
+        synchronized (collator) {
+            return collator.compare(titleA, titleB);
+        }
     }
 }
@@ -40,6 +40,8 @@ import java.util.stream.Collectors;
  */
 public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
 
+    private static final WidgetPreviewLoadedCallback PREFETCH_CALLBACK = preview -> { };
+
     @NonNull
     private final WidgetPreviewLoader mDelegate;
     @NonNull
@@ -130,6 +132,15 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
     public CancellationSignal loadPreview(
             @NonNull BaseActivity activity, @NonNull WidgetItem item, @NonNull Size previewSize,
             @NonNull WidgetPreviewLoadedCallback callback) {
+        return loadPreview(activity, item, previewSize, callback, PRIORITY_VISIBLE);
+    }
+
+    @Override
+    @UiThread
+    @NonNull
+    public CancellationSignal loadPreview(
+            @NonNull BaseActivity activity, @NonNull WidgetItem item, @NonNull Size previewSize,
+            @NonNull WidgetPreviewLoadedCallback callback, int priority) {
         CancellationSignal signal = new CancellationSignal();
         signal.setOnCancelListener(() -> {
             synchronized (mCache) {
@@ -168,7 +179,13 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
                 // If we're already loading the preview for this key, then just add the callback
                 // to the set we'll call after it loads.
                 CacheResult.Loading prev = (CacheResult.Loading) cacheResult;
-                putCacheResult(item, previewSize, prev.withCallback(callback));
+                CacheResult.Loading updated = prev.withCallback(callback);
+                if (priority < prev.mPriority) {
+                    // The preview is needed sooner than requested before
+                    mDelegate.setPriority(item, previewSize, priority);
+                    updated = updated.withPriority(priority);
+                }
+                putCacheResult(item, previewSize, updated);
                 return signal;
             }
 
@@ -193,18 +210,35 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
                                     // call back to the provided callback, there can't be others.
                                     callback.onPreviewLoaded(preview);
                                 }
-                            });
+                            },
+                            priority);
             ArraySet<WidgetPreviewLoadedCallback> callbacks = new ArraySet<>();
             callbacks.add(callback);
             putCacheResult(
                     item,
                     previewSize,
-                    new CacheResult.Loading(delegateCancellationSignal, callbacks));
+                    new CacheResult.Loading(delegateCancellationSignal, callbacks, priority));
         }
 
         return signal;
     }
 
+    /**
+     * Starts loading the preview for the item and size so that it is in the cache when the item
+     * is shown. Requests for the same preview share the load with this one.
+     *
+     * @param priority priority of the load, see {@link WidgetPreviewLoader#loadPreview(
+     *                 BaseActivity, WidgetItem, Size, WidgetPreviewLoadedCallback, int)}
+     * @return a {@link CancellationSignal}, which can cancel the request before it loads
+     */
+    @UiThread
+    @NonNull
+    public CancellationSignal prefetchPreview(
+            @NonNull BaseActivity activity, @NonNull WidgetItem item,
+            @NonNull Size previewSize, int priority) {
+        return loadPreview(activity, item, previewSize, PREFETCH_CALLBACK, priority);
+    }
+
     /**
      * Clears all cached previews for {@code items}, cancelling any in-progress preview loading.
      */
@@ -257,11 +291,18 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
             final CancellationSignal mCancellationSignal;
             @NonNull
             final Set<WidgetPreviewLoadedCallback> mCallbacks;
+            final int mPriority;
 
             Loading(@NonNull CancellationSignal cancellationSignal,
-                    @NonNull Set<WidgetPreviewLoadedCallback> callbacks) {
+                    @NonNull Set<WidgetPreviewLoadedCallback> callbacks, int priority) {
                 mCancellationSignal = cancellationSignal;
                 mCallbacks = callbacks;
+                mPriority = priority;
+            }
+
+            @NonNull
+            Loading withPriority(int priority) {
+                return new Loading(mCancellationSignal, mCallbacks, priority);
             }
 
             @NonNull
@@ -271,7 +312,7 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
                         new ArraySet<>(mCallbacks.size() + 1);
                 newCallbacks.addAll(mCallbacks);
                 newCallbacks.add(callback);
-                return new Loading(mCancellationSignal, newCallbacks);
+                return new Loading(mCancellationSignal, newCallbacks, mPriority);
             }
 
             @NonNull
@@ -284,7 +325,7 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
                         newCallbacks.add(existingCallback);
                     }
                 }
-                return new Loading(mCancellationSignal, newCallbacks);
+                return new Loading(mCancellationSignal, newCallbacks, mPriority);
             }
         }
 
@@ -36,12 +36,13 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.CancellationSignal;
 import android.os.Process;
 import android.os.UserHandle;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.Pair;
@@ -63,19 +64,16 @@ import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.pm.ShortcutConfigActivityInfo;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.util.ComponentKey;
-import com.android.launcher3.util.Executors;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.util.WidgetSizes;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -86,22 +84,28 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
     private static final String TAG = "WidgetPreviewLoader";
     private static final boolean DEBUG = false;
 
+    // Size of the full size preview of a widget, which the other sizes are scaled from
+    private static final String MASTER_SIZE = "master";
+
     private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
 
-    /**
-     * Weak reference objects, do not prevent their referents from being made finalizable,
-     * finalized, and then reclaimed.
-     * Note: synchronized block used for this variable is expensive and the block should always
-     * be posted to a background thread.
-     */
+    // Budget of the previews which are no longer used, kept to be drawn into again
+    private static final long UNUSED_BITMAPS_MAX_BYTES = 2 * 1024 * 1024;
+
+    @Thunk
+    final PreviewBitmapPool mUnusedBitmaps = new PreviewBitmapPool(UNUSED_BITMAPS_MAX_BYTES);
     @Thunk
-    final Set<Bitmap> mUnusedBitmaps = Collections.newSetFromMap(new WeakHashMap<>());
+    final PreviewLoadExecutor mLoadExecutor = new PreviewLoadExecutor();
+    // Requests which haven't called back yet, by preview
+    @Thunk
+    final HashMap<WidgetCacheKey, PreviewLoadTask> mPendingTasks = new HashMap<>();
 
     private final Context mContext;
     private final IconCache mIconCache;
     private final UserCache mUserCache;
     private final CacheDb mDb;
     private final float mPreviewBoxCornerRadius;
+    private final int mMasterPreviewMaxWidth;
 
     public DatabaseWidgetPreviewLoader(Context context, IconCache iconCache) {
         mContext = context;
@@ -112,11 +116,13 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         mPreviewBoxCornerRadius = previewCornerRadius > 0
                 ? previewCornerRadius
                 : mContext.getResources().getDimension(R.dimen.widget_preview_corner_radius);
+        // Previews are never larger than the screen width in the picker
+        DisplayMetrics dm = mContext.getResources().getDisplayMetrics();
+        mMasterPreviewMaxWidth = Math.min(dm.widthPixels, dm.heightPixels);
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
-     * called on UI thread.
+     * Generates the widget preview on {@link PreviewLoadExecutor}. Must be called on UI thread.
      *
      * @return a request id which can be used to cancel the request.
      */
@@ -127,25 +133,64 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             @NonNull WidgetItem item,
             @NonNull Size previewSize,
             @NonNull WidgetPreviewLoadedCallback callback) {
+        return loadPreview(activity, item, previewSize, callback, PRIORITY_VISIBLE);
+    }
+
+    @Override
+    @NonNull
+    public CancellationSignal loadPreview(
+            @NonNull BaseActivity activity,
+            @NonNull WidgetItem item,
+            @NonNull Size previewSize,
+            @NonNull WidgetPreviewLoadedCallback callback,
+            int priority) {
+        Preconditions.assertUIThread();
         int previewWidth = previewSize.getWidth();
         int previewHeight = previewSize.getHeight();
-        String size = previewWidth + "x" + previewHeight;
-        WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
+        WidgetCacheKey key = toCacheKey(item, previewSize);
 
         PreviewLoadTask task =
                 new PreviewLoadTask(activity, key, item, previewWidth, previewHeight, callback);
-        task.executeOnExecutor(Executors.THREAD_POOL_EXECUTOR);
+        mPendingTasks.put(key, task);
+        mLoadExecutor.execute(task, priority);
 
         CancellationSignal signal = new CancellationSignal();
         signal.setOnCancelListener(task);
         return signal;
     }
 
+    @Override
+    public void setPriority(@NonNull WidgetItem item, @NonNull Size previewSize, int priority) {
+        Preconditions.assertUIThread();
+        PreviewLoadTask task = mPendingTasks.get(toCacheKey(item, previewSize));
+        if (task != null) {
+            mLoadExecutor.setPriority(task, priority);
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mLoadExecutor.dump(prefix, writer);
+    }
+
+    private static WidgetCacheKey toCacheKey(WidgetItem item, Size previewSize) {
+        return new WidgetCacheKey(item.componentName, item.user,
+                previewSize.getWidth() + "x" + previewSize.getHeight());
+    }
+
+    /**
+     * Drops the previews kept to be drawn into again, they are only useful while the widget
+     * tray is shown.
+     */
+    public void releaseUnusedBitmaps() {
+        mUnusedBitmaps.clear();
+    }
+
     /**
-     * Clears the database storing previews.
+     * Clears the previews which depend on the device profile. The full size previews of the
+     * widgets are kept, as the other sizes can be scaled from them.
      */
     public void refresh() {
-        mDb.clear();
+        mDb.delete(CacheDb.COLUMN_SIZE + " != ?", new String[]{MASTER_SIZE});
     }
 
     /**
@@ -354,6 +399,65 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         return null;
     }
 
+    /**
+     * Returns the preview of a widget with a preview image, scaled down from the full size
+     * preview. The full size preview is read from the DB, or generated and saved in the DB.
+     *
+     * @return the preview, or null if the widget has no preview image or it can't be loaded
+     */
+    @Thunk
+    @Nullable
+    Bitmap loadFromMasterPreview(BaseActivity launcher, WidgetItem item, @Nullable long[] versions,
+            Bitmap recycle, int previewWidth, PreviewLoadTask loadTask) {
+        LauncherAppWidgetProviderInfo info = item.widgetInfo;
+        if (info == null || info.previewImage == 0) {
+            return null;
+        }
+        WidgetCacheKey masterKey = new WidgetCacheKey(item.componentName, item.user, MASTER_SIZE);
+        Bitmap master = readFromDb(masterKey, null, loadTask);
+        if (master == null && !loadTask.isCancelled()) {
+            Drawable drawable = loadPreviewDrawable(info);
+            if (drawable == null || drawable.getIntrinsicWidth() <= 0
+                    || drawable.getIntrinsicHeight() <= 0) {
+                // Without an intrinsic size, the preview is sized from the device profile, and
+                // the full size preview is kept when the device profile changes
+                return null;
+            }
+            master = generateWidgetPreview(launcher, info, drawable, mMasterPreviewMaxWidth,
+                    null, null).first;
+            if (versions != null) {
+                Bitmap generated = master;
+                MODEL_EXECUTOR.post(() -> writeToDb(masterKey, versions, generated));
+            }
+        }
+        if (master == null || loadTask.isCancelled()) {
+            return null;
+        }
+
+        // Same scaling as generateWidgetPreview
+        int width = master.getWidth();
+        int height = master.getHeight();
+        if (width <= previewWidth) {
+            return master;
+        }
+        float scale = previewWidth / (float) width;
+        width = Math.max((int) (scale * width), 1);
+        height = Math.max((int) (scale * height), 1);
+
+        Bitmap preview = recycle;
+        try {
+            preview.reconfigure(width, height, preview.getConfig());
+        } catch (IllegalArgumentException e) {
+            preview = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+        }
+        Canvas c = new Canvas(preview);
+        c.drawColor(0, PorterDuff.Mode.CLEAR);
+        c.drawBitmap(master, null, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        c.setBitmap(null);
+        return preview;
+    }
+
     /**
      * Returns a generated preview for a widget and if the preview should be saved in persistent
      * storage.
@@ -391,28 +495,41 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
     public Pair<Bitmap, Boolean> generateWidgetPreview(BaseActivity launcher,
                                                        LauncherAppWidgetProviderInfo info,
                                                        int maxPreviewWidth, Bitmap preview, int[] preScaledWidthOut) {
-        // Load the preview image if possible
-        if (maxPreviewWidth < 0) maxPreviewWidth = Integer.MAX_VALUE;
+        return generateWidgetPreview(launcher, info, loadPreviewDrawable(info), maxPreviewWidth,
+                preview, preScaledWidthOut);
+    }
 
-        Drawable drawable = null;
-        if (info.previewImage != 0) {
-            try {
-                drawable = info.loadPreviewImage(mContext, 0);
-            } catch (OutOfMemoryError e) {
-                Log.w(TAG, "Error loading widget preview for: " + info.provider, e);
-                // During OutOfMemoryError, the previous heap stack is not affected. Catching
-                // an OOM error here should be safe & not affect other parts of launcher.
-                drawable = null;
-            }
-            if (drawable != null) {
-                drawable = mutateOnMainThread(drawable);
-            } else {
-                Log.w(TAG, "Can't load widget preview drawable 0x"
-                        + Integer.toHexString(info.previewImage)
-                        + " for provider: "
-                        + info.provider);
-            }
+    /**
+     * Returns the preview image of {@param info}, or null if it has none or it can't be loaded.
+     */
+    @Nullable
+    private Drawable loadPreviewDrawable(LauncherAppWidgetProviderInfo info) {
+        if (info.previewImage == 0) {
+            return null;
         }
+        Drawable drawable;
+        try {
+            drawable = info.loadPreviewImage(mContext, 0);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Error loading widget preview for: " + info.provider, e);
+            // During OutOfMemoryError, the previous heap stack is not affected. Catching
+            // an OOM error here should be safe & not affect other parts of launcher.
+            drawable = null;
+        }
+        if (drawable != null) {
+            return mutateOnMainThread(drawable);
+        }
+        Log.w(TAG, "Can't load widget preview drawable 0x"
+                + Integer.toHexString(info.previewImage)
+                + " for provider: "
+                + info.provider);
+        return null;
+    }
+
+    private Pair<Bitmap, Boolean> generateWidgetPreview(BaseActivity launcher,
+            LauncherAppWidgetProviderInfo info, @Nullable Drawable drawable, int maxPreviewWidth,
+            Bitmap preview, int[] preScaledWidthOut) {
+        if (maxPreviewWidth < 0) maxPreviewWidth = Integer.MAX_VALUE;
 
         final boolean widgetPreviewExists = (drawable != null);
         final int spanX = info.spanX;
@@ -621,7 +738,7 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         }
     }
 
-    private class PreviewLoadTask extends AsyncTask<Void, Void, Bitmap>
+    private class PreviewLoadTask extends PreviewLoadExecutor.Task
             implements CancellationSignal.OnCancelListener {
         @Thunk
         final WidgetCacheKey mKey;
@@ -638,6 +755,7 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         @Nullable
         private Bitmap mUnusedPreviewBitmap;
         private boolean mSaveToDB = false;
+        private volatile boolean mCancelled = false;
 
         PreviewLoadTask(BaseActivity activity, WidgetCacheKey key, WidgetItem info,
                         int previewWidth, int previewHeight, WidgetPreviewLoadedCallback callback) {
@@ -653,28 +771,32 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             }
         }
 
-        @Override
-        protected Bitmap doInBackground(Void... params) {
-            Bitmap unusedBitmap = null;
+        boolean isCancelled() {
+            return mCancelled;
+        }
 
+        @Override
+        protected void runInBackground() {
             // If already cancelled before this gets to run in the background, then return early
             if (isCancelled()) {
-                return null;
+                return;
             }
-            synchronized (mUnusedBitmaps) {
-                // Check if we can re-use a bitmap
-                for (Bitmap candidate : mUnusedBitmaps) {
-                    if (candidate != null && candidate.isMutable()
-                            && candidate.getWidth() == mPreviewWidth
-                            && candidate.getHeight() == mPreviewHeight) {
-                        unusedBitmap = candidate;
-                        mUnusedBitmaps.remove(unusedBitmap);
-                        break;
-                    }
+            Bitmap preview = loadBitmap();
+            MAIN_EXECUTOR.execute(() -> {
+                if (mPendingTasks.get(mKey) == this) {
+                    mPendingTasks.remove(mKey);
                 }
-            }
+                if (isCancelled()) {
+                    onCancelled(preview);
+                } else {
+                    onLoaded(preview);
+                }
+            });
+        }
 
-            // creating a bitmap is expensive. Do not do this inside synchronized block.
+        private Bitmap loadBitmap() {
+            // Check if we can re-use a bitmap
+            Bitmap unusedBitmap = mUnusedBitmaps.obtain(mPreviewWidth, mPreviewHeight);
             if (unusedBitmap == null) {
                 unusedBitmap = Bitmap.createBitmap(mPreviewWidth, mPreviewHeight, Config.ARGB_8888);
             }
@@ -693,49 +815,45 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
                 mVersions = persistable ? getPackageVersion(mKey.componentName.getPackageName())
                         : null;
 
-                // it's not in the db... we need to generate it
-                Pair<Bitmap, Boolean> pair = generatePreview(mActivity, mInfo, unusedBitmap,
-                        mPreviewWidth, mPreviewHeight);
-                preview = pair.first;
+                // it's not in the db... try to scale it from the full size preview
+                preview = loadFromMasterPreview(mActivity, mInfo, mVersions, unusedBitmap,
+                        mPreviewWidth, this);
+                if (preview != null) {
+                    this.mSaveToDB = true;
+                } else if (!isCancelled()) {
+                    // we need to generate it
+                    Pair<Bitmap, Boolean> pair = generatePreview(mActivity, mInfo, unusedBitmap,
+                            mPreviewWidth, mPreviewHeight);
+                    preview = pair.first;
+                    this.mSaveToDB = pair.second;
+                }
 
                 if (preview != unusedBitmap) {
                     mUnusedPreviewBitmap = unusedBitmap;
                 }
-
-                this.mSaveToDB = pair.second;
             }
             return preview;
         }
 
-        @Override
-        protected void onPostExecute(final Bitmap preview) {
+        private void onLoaded(final Bitmap preview) {
             mCallback.onPreviewLoaded(preview);
 
             // Write the generated preview to the DB in the worker thread
             if (mVersions != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (mUnusedPreviewBitmap != null) {
-                            // If we didn't end up using the bitmap, it can be added back into the
-                            // recycled set.
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(mUnusedPreviewBitmap);
-                            }
-                        }
-
-                        if (!isCancelled() && mSaveToDB) {
-                            // If we are still using this preview, then write it to the DB and then
-                            // let the normal clear mechanism recycle the bitmap
-                            writeToDb(mKey, mVersions, preview);
-                            mBitmapToRecycle = preview;
-                        } else {
-                            // If we've already cancelled, then skip writing the bitmap to the DB
-                            // and manually add the bitmap back to the recycled set
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(preview);
-                            }
-                        }
+                MODEL_EXECUTOR.post(() -> {
+                    // If we didn't end up using the bitmap, it can be added back into the
+                    // recycled set.
+                    mUnusedBitmaps.recycle(mUnusedPreviewBitmap);
+
+                    if (!isCancelled() && mSaveToDB) {
+                        // If we are still using this preview, then write it to the DB and then
+                        // let the normal clear mechanism recycle the bitmap
+                        writeToDb(mKey, mVersions, preview);
+                        mBitmapToRecycle = preview;
+                    } else {
+                        // If we've already cancelled, then skip writing the bitmap to the DB
+                        // and manually add the bitmap back to the recycled set
+                        mUnusedBitmaps.recycle(preview);
                     }
                 });
             } else {
@@ -745,41 +863,31 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             }
         }
 
-        @Override
-        protected void onCancelled(final Bitmap preview) {
+        private void onCancelled(final Bitmap preview) {
             // If we've cancelled while the task is running, then can return the bitmap to the
             // recycled set immediately. Otherwise, it will be recycled after the preview is written
             // to disk.
-            if (preview != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(preview);
-                        }
-                    }
-                });
-            }
+            mUnusedBitmaps.recycle(preview);
         }
 
         @Override
         public void onCancel() {
-            cancel(true);
+            mCancelled = true;
+            // Drops the task if it hasn't started yet
+            mLoadExecutor.remove(this);
+            if (mPendingTasks.get(mKey) == this) {
+                mPendingTasks.remove(mKey);
+            }
 
             // This only handles the case where the PreviewLoadTask is cancelled after the task has
             // successfully completed (including having written to disk when necessary).  In the
             // other cases where it is cancelled while the task is running, it will be cleaned up
             // in the tasks's onCancelled() call, and if cancelled while the task is writing to
-            // disk, it will be cancelled in the task's onPostExecute() call.
+            // disk, it will be cancelled in the task's onLoaded() call.
             if (mBitmapToRecycle != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(mBitmapToRecycle);
-                        }
-                        mBitmapToRecycle = null;
-                    }
+                MODEL_EXECUTOR.post(() -> {
+                    mUnusedBitmaps.recycle(mBitmapToRecycle);
+                    mBitmapToRecycle = null;
                 });
             }
         }
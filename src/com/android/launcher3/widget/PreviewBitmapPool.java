@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Pool of the preview bitmaps which are no longer used, bucketed by size so that a bitmap of the
+ * requested size is found without scanning the pool. The pool drops the bitmaps added over its
+ * byte budget.
+ */
+class PreviewBitmapPool {
+
+    private final HashMap<Long, ArrayDeque<Bitmap>> mBuckets = new HashMap<>();
+    // Size of all the bitmaps in the buckets, as a bitmap can be released more than once
+    private final IdentityHashMap<Bitmap, Integer> mPooledSizes = new IdentityHashMap<>();
+    private final long mMaxSizeBytes;
+    private long mSizeBytes;
+
+    PreviewBitmapPool(long maxSizeBytes) {
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Removes and returns a bitmap of the given size from the pool, or returns null if there is
+     * none.
+     */
+    @Nullable
+    synchronized Bitmap obtain(int width, int height) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(toKey(width, height));
+        while (bucket != null && !bucket.isEmpty()) {
+            Bitmap bitmap = bucket.pop();
+            mSizeBytes -= mPooledSizes.remove(bitmap);
+            if (!bitmap.isRecycled()) {
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds {@param bitmap} to the pool, if it can be reused.
+     */
+    synchronized void recycle(@Nullable Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()
+                || mPooledSizes.containsKey(bitmap)) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (mSizeBytes + size > mMaxSizeBytes) {
+            return;
+        }
+        mBuckets.computeIfAbsent(toKey(bitmap.getWidth(), bitmap.getHeight()),
+                k -> new ArrayDeque<>()).push(bitmap);
+        mPooledSizes.put(bitmap, size);
+        mSizeBytes += size;
+    }
+
+    /**
+     * Drops all the bitmaps of the pool.
+     */
+    synchronized void clear() {
+        mBuckets.clear();
+        mPooledSizes.clear();
+        mSizeBytes = 0;
+    }
+
+    private static long toKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+}
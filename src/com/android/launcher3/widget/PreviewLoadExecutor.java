@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
+
+import java.io.PrintWriter;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor dedicated to loading widget previews. Pending tasks run by priority, lowest value
+ * first, and in submission order for the same priority. A task which is cancelled before it
+ * starts is removed from the queue, and its priority can be changed while it is queued.
+ */
+class PreviewLoadExecutor {
+
+    private static final int POOL_SIZE =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+    private static final int KEEP_ALIVE_SECONDS = 5;
+
+    private final AtomicLong mSequence = new AtomicLong();
+    private final PriorityBlockingQueue<Runnable> mQueue = new PriorityBlockingQueue<>();
+    private final ThreadPoolExecutor mExecutor;
+
+    // Stats, guarded by this
+    private int mMaxQueueDepth;
+    private long mLoadCount;
+    private long mCancelledCount;
+    private long mTotalWaitMs;
+    private long mMaxWaitMs;
+    private long mTotalLoadMs;
+    private long mMaxLoadMs;
+
+    PreviewLoadExecutor() {
+        mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, mQueue, new SimpleThreadFactory(
+                        "widget-preview-", Process.THREAD_PRIORITY_BACKGROUND));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues {@param task} with {@param priority}.
+     */
+    void execute(@NonNull Task task, int priority) {
+        task.mExecutor = this;
+        task.mPriority = priority;
+        task.mSequence = mSequence.getAndIncrement();
+        task.mQueuedTime = SystemClock.uptimeMillis();
+        mExecutor.execute(task);
+        synchronized (this) {
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+        }
+    }
+
+    /**
+     * Changes the priority of {@param task} if it hasn't started yet.
+     */
+    void setPriority(@NonNull Task task, int priority) {
+        if (task.mPriority == priority) {
+            return;
+        }
+        // The queue order only updates when an element is added
+        if (mQueue.remove(task)) {
+            task.mPriority = priority;
+            mQueue.add(task);
+        }
+    }
+
+    /**
+     * Removes {@param task} from the queue if it hasn't started yet.
+     *
+     * @return true if the task will not run
+     */
+    boolean remove(@NonNull Task task) {
+        boolean removed = mQueue.remove(task);
+        if (removed) {
+            synchronized (this) {
+                mCancelledCount++;
+            }
+        }
+        return removed;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        synchronized (this) {
+            writer.println(prefix + "PreviewLoadExecutor:"
+                    + " queueDepth=" + mQueue.size()
+                    + " maxQueueDepth=" + mMaxQueueDepth
+                    + " loads=" + mLoadCount
+                    + " cancelledBeforeStart=" + mCancelledCount);
+            if (mLoadCount > 0) {
+                writer.println(prefix + "  avgWaitMs=" + (mTotalWaitMs / mLoadCount)
+                        + " maxWaitMs=" + mMaxWaitMs
+                        + " avgLoadMs=" + (mTotalLoadMs / mLoadCount)
+                        + " maxLoadMs=" + mMaxLoadMs);
+            }
+        }
+    }
+
+    private synchronized void onTaskRun(long waitMs, long loadMs) {
+        mLoadCount++;
+        mTotalWaitMs += waitMs;
+        mMaxWaitMs = Math.max(mMaxWaitMs, waitMs);
+        mTotalLoadMs += loadMs;
+        mMaxLoadMs = Math.max(mMaxLoadMs, loadMs);
+    }
+
+    /**
+     * A task run by {@link PreviewLoadExecutor}
+     */
+    abstract static class Task implements Runnable, Comparable<Task> {
+
+        private PreviewLoadExecutor mExecutor;
+        private volatile int mPriority;
+        private long mSequence;
+        private long mQueuedTime;
+
+        /**
+         * Runs the task on a worker thread.
+         */
+        protected abstract void runInBackground();
+
+        @Override
+        public final void run() {
+            long startTime = SystemClock.uptimeMillis();
+            try {
+                runInBackground();
+            } finally {
+                long endTime = SystemClock.uptimeMillis();
+                mExecutor.onTaskRun(startTime - mQueuedTime, endTime - startTime);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int result = Integer.compare(mPriority, other.mPriority);
+            return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
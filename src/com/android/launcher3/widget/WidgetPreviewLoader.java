@@ -29,6 +29,12 @@ import com.android.launcher3.model.WidgetItem;
  * Asynchronous loader of preview bitmaps for {@link WidgetItem}s.
  */
 public interface WidgetPreviewLoader {
+
+    /**
+     * Priority of the requests for previews which are shown.
+     */
+    int PRIORITY_VISIBLE = 0;
+
     /**
      * Loads a widget preview and calls back to {@code callback} when complete.
      *
@@ -42,6 +48,28 @@ public interface WidgetPreviewLoader {
             @NonNull Size previewSize,
             @NonNull WidgetPreviewLoadedCallback callback);
 
+    /**
+     * Same as {@link #loadPreview(BaseActivity, WidgetItem, Size, WidgetPreviewLoadedCallback)}
+     * with a priority, for previews which aren't shown yet. Requests with a lower priority are
+     * loaded first, the previews which are shown use {@link #PRIORITY_VISIBLE}.
+     */
+    @NonNull
+    @UiThread
+    default CancellationSignal loadPreview(
+            @NonNull BaseActivity activity,
+            @NonNull WidgetItem item,
+            @NonNull Size previewSize,
+            @NonNull WidgetPreviewLoadedCallback callback,
+            int priority) {
+        return loadPreview(activity, item, previewSize, callback);
+    }
+
+    /**
+     * Changes the priority of the pending request for the item and size, if any.
+     */
+    @UiThread
+    default void setPriority(@NonNull WidgetItem item, @NonNull Size previewSize, int priority) { }
+
     /**
      * Callback class for requests to {@link WidgetPreviewLoader}.
      */
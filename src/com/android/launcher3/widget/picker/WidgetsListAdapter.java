@@ -52,6 +52,7 @@ import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.widget.CachingWidgetPreviewLoader;
 import com.android.launcher3.widget.DatabaseWidgetPreviewLoader;
 import com.android.launcher3.widget.WidgetCell;
+import com.android.launcher3.widget.WidgetPreviewLoader;
 import com.android.launcher3.widget.WidgetPreviewLoader.WidgetPreviewLoadedCallback;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
 import com.android.launcher3.widget.model.WidgetsListContentEntry;
@@ -62,6 +63,8 @@ import com.android.launcher3.widget.util.WidgetSizes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.OptionalInt;
@@ -123,6 +126,17 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
     private final WidgetPreviewLoadedCallback mPreviewLoadedCallback =
             ignored -> updateVisibleEntries();
 
+    // Widgets of the packages whose previews are prefetched, as their header is on screen or in
+    // the next screenful
+    private final Map<PackageUserKey, List<WidgetItem>> mPrefetchedPackages = new HashMap<>();
+    private final RecyclerView.OnScrollListener mPrefetchScrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    prefetchPreviews(dy);
+                }
+            };
+
     public WidgetsListAdapter(Context context, LayoutInflater layoutInflater,
                               DatabaseWidgetPreviewLoader widgetPreviewLoader, IconCache iconCache,
                               OnClickListener iconClickListener, OnLongClickListener iconLongClickListener) {
@@ -159,6 +173,7 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
     @Override
     public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
         mRecyclerView = recyclerView;
+        mRecyclerView.addOnScrollListener(mPrefetchScrollListener);
 
         mRecyclerView.addItemDecoration(new RecyclerView.ItemDecoration() {
             @Override
@@ -178,6 +193,7 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
 
     @Override
     public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(mPrefetchScrollListener);
         mRecyclerView = null;
     }
 
@@ -231,6 +247,7 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
      */
     public void setWidgets(List<WidgetsListBaseEntry> tempEntries) {
         mCachingPreviewLoader.clearAll();
+        mPrefetchedPackages.clear();
         mAllEntries = tempEntries.stream().sorted(mRowComparator)
                 .collect(Collectors.toList());
         if (shouldClearVisibleEntries()) {
@@ -303,22 +320,17 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
 
             WidgetsListContentEntry contentEntry = (WidgetsListContentEntry) entry;
             if (!matchesKey(entry, mWidgetsContentVisiblePackageUserKey)) {
-                // If the entry isn't visible, clear any loaded previews.
-                mCachingPreviewLoader.clearPreviews(contentEntry.mWidgets);
+                // If the entry isn't visible, clear any loaded previews, unless they are
+                // prefetched.
+                if (!mPrefetchedPackages.containsKey(toPackageUserKey(entry))) {
+                    mCachingPreviewLoader.clearPreviews(contentEntry.mWidgets);
+                }
                 continue;
             }
 
             for (int i = 0; i < entry.mWidgets.size(); i++) {
                 WidgetItem widgetItem = entry.mWidgets.get(i);
-                DeviceProfile deviceProfile = activity.getDeviceProfile();
-                Size widgetSize = WidgetSizes.getWidgetItemSizePx(mContext, deviceProfile,
-                        widgetItem);
-                if (widgetItem.isShortcut()) {
-                    widgetSize =
-                            new Size(
-                                    widgetSize.getWidth() + mShortcutPreviewPadding,
-                                    widgetSize.getHeight() + mShortcutPreviewPadding);
-                }
+                Size widgetSize = getPreviewSize(activity.getDeviceProfile(), widgetItem);
 
                 if (widgetItem.hasPreviewLayout()
                         || mCachingPreviewLoader.isPreviewLoaded(widgetItem, widgetSize)) {
@@ -339,6 +351,92 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
         return allReady;
     }
 
+    /**
+     * Prefetches the previews of the packages whose header is on screen or in the next screenful
+     * in the scroll direction, so that they are ready when the header is expanded. The previews
+     * of the packages which scrolled away are cleared, unless their header is expanded.
+     */
+    private void prefetchPreviews(int dy) {
+        if (mRecyclerView == null
+                || !(mRecyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION || lastVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        int first = firstVisible;
+        int last = lastVisible;
+        int screenful = last - first + 1;
+        if (dy > 0) {
+            last += screenful;
+        } else if (dy < 0) {
+            first -= screenful;
+        }
+        first = Math.max(first, 0);
+        last = Math.min(last, mVisibleEntries.size() - 1);
+
+        // Headers to prefetch, with their distance from the screen in rows
+        Map<PackageUserKey, Integer> keys = new HashMap<>();
+        for (int i = first; i <= last; i++) {
+            WidgetsListBaseEntry entry = mVisibleEntries.get(i);
+            if (entry instanceof WidgetsListBaseEntry.Header) {
+                keys.put(toPackageUserKey(entry),
+                        Math.max(0, Math.max(firstVisible - i, i - lastVisible)));
+            }
+        }
+        if (keys.keySet().equals(mPrefetchedPackages.keySet())) return;
+
+        Iterator<Map.Entry<PackageUserKey, List<WidgetItem>>> iterator =
+                mPrefetchedPackages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<PackageUserKey, List<WidgetItem>> prefetched = iterator.next();
+            if (keys.containsKey(prefetched.getKey())) continue;
+            iterator.remove();
+            if (!prefetched.getKey().equals(mWidgetsContentVisiblePackageUserKey)) {
+                mCachingPreviewLoader.clearPreviews(prefetched.getValue());
+            }
+        }
+
+        BaseActivity activity = BaseActivity.fromContext(mContext);
+        for (WidgetsListBaseEntry entry : mAllEntries) {
+            if (!(entry instanceof WidgetsListContentEntry)) continue;
+            PackageUserKey key = toPackageUserKey(entry);
+            Integer distance = keys.get(key);
+            if (distance == null || mPrefetchedPackages.containsKey(key)) continue;
+
+            // Load the previews of the headers on screen first, after the visible previews
+            int priority = WidgetPreviewLoader.PRIORITY_VISIBLE + 1 + distance;
+            for (WidgetItem widgetItem : entry.mWidgets) {
+                Size widgetSize = getPreviewSize(activity.getDeviceProfile(), widgetItem);
+                if (!widgetItem.hasPreviewLayout()
+                        && !mCachingPreviewLoader.isPreviewLoaded(widgetItem, widgetSize)) {
+                    mCachingPreviewLoader.prefetchPreview(
+                            activity, widgetItem, widgetSize, priority);
+                }
+            }
+            mPrefetchedPackages.put(key, entry.mWidgets);
+        }
+    }
+
+    private Size getPreviewSize(DeviceProfile deviceProfile, WidgetItem widgetItem) {
+        Size widgetSize = WidgetSizes.getWidgetItemSizePx(mContext, deviceProfile, widgetItem);
+        if (widgetItem.isShortcut()) {
+            widgetSize =
+                    new Size(
+                            widgetSize.getWidth() + mShortcutPreviewPadding,
+                            widgetSize.getHeight() + mShortcutPreviewPadding);
+        }
+        return widgetSize;
+    }
+
+    private static PackageUserKey toPackageUserKey(@NonNull WidgetsListBaseEntry entry) {
+        return new PackageUserKey(entry.mPkgItem.packageName, entry.mPkgItem.user);
+    }
+
     /**
      * Returns whether {@code entry} matches {@code key}.
      */
@@ -439,6 +537,7 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
 
     private void cancelLoadingPreviews() {
         mCachingPreviewLoader.clearAll();
+        mPrefetchedPackages.clear();
     }
 
     /**
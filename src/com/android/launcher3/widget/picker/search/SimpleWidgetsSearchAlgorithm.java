@@ -16,32 +16,34 @@
 
 package com.android.launcher3.widget.picker.search;
 
-import static com.android.launcher3.search.StringMatcherUtility.matches;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
 
 import android.os.Handler;
 
-import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.popup.PopupDataProvider;
 import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
-import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
-import com.android.launcher3.widget.model.WidgetsListContentEntry;
-import com.android.launcher3.widget.model.WidgetsListHeaderEntry;
-import com.android.launcher3.widget.model.WidgetsListSearchHeaderEntry;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Implementation of {@link SearchAlgorithm} that posts a task to query on the main thread.
+ * Implementation of {@link SearchAlgorithm} that filters the widgets on a background thread,
+ * using a {@link WidgetsSearchIndex} that is only rebuilt when the widgets list changes, and
+ * posts the result on the main thread. A new query or an interrupting cancel drops the
+ * results of the previous one.
  */
 public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<WidgetsListBaseEntry> {
 
     private final Handler mResultHandler;
     private final PopupDataProvider mDataProvider;
 
+    // Only accessed on UI_HELPER_EXECUTOR
+    private final WidgetsSearchIndex mSearchIndex = new WidgetsSearchIndex();
+    private final AtomicInteger mRequestId = new AtomicInteger();
+
     public SimpleWidgetsSearchAlgorithm(PopupDataProvider dataProvider) {
         mResultHandler = new Handler();
         mDataProvider = dataProvider;
@@ -49,13 +51,31 @@ public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<Widge
 
     @Override
     public void doSearch(String query, SearchCallback<WidgetsListBaseEntry> callback) {
-        ArrayList<WidgetsListBaseEntry> result = getFilteredWidgets(mDataProvider, query);
-        mResultHandler.post(() -> callback.onSearchResult(query, result));
+        int requestId = mRequestId.incrementAndGet();
+        // Read on the calling thread, where the data provider is updated
+        List<WidgetsListBaseEntry> allWidgets = mDataProvider.getAllWidgets();
+        UI_HELPER_EXECUTOR.execute(() -> {
+            if (requestId != mRequestId.get()) {
+                return;
+            }
+            mSearchIndex.update(allWidgets);
+            ArrayList<WidgetsListBaseEntry> result =
+                    mSearchIndex.search(query, () -> requestId != mRequestId.get());
+            if (result == null) {
+                return;
+            }
+            mResultHandler.post(() -> {
+                if (requestId == mRequestId.get()) {
+                    callback.onSearchResult(query, result);
+                }
+            });
+        });
     }
 
     @Override
     public void cancel(boolean interruptActiveRequests) {
         if (interruptActiveRequests) {
+            mRequestId.incrementAndGet();
             mResultHandler.removeCallbacksAndMessages(/*token= */null);
         }
     }
@@ -65,30 +85,8 @@ public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<Widge
      */
     public static ArrayList<WidgetsListBaseEntry> getFilteredWidgets(
             PopupDataProvider dataProvider, String input) {
-        ArrayList<WidgetsListBaseEntry> results = new ArrayList<>();
-        dataProvider.getAllWidgets().stream()
-                .filter(entry -> entry instanceof WidgetsListHeaderEntry)
-                .forEach(headerEntry -> {
-                    List<WidgetItem> matchedWidgetItems = filterWidgetItems(
-                            input, headerEntry.mPkgItem.title.toString(), headerEntry.mWidgets);
-                    if (matchedWidgetItems.size() > 0) {
-                        results.add(new WidgetsListSearchHeaderEntry(headerEntry.mPkgItem,
-                                headerEntry.mTitleSectionName, matchedWidgetItems));
-                        results.add(new WidgetsListContentEntry(headerEntry.mPkgItem,
-                                headerEntry.mTitleSectionName, matchedWidgetItems));
-                    }
-                });
-        return results;
-    }
-
-    private static List<WidgetItem> filterWidgetItems(String query, String packageTitle,
-                                                      List<WidgetItem> items) {
-        StringMatcher matcher = StringMatcher.getInstance();
-        if (matches(query, packageTitle, matcher)) {
-            return items;
-        }
-        return items.stream()
-                .filter(item -> matches(query, item.label, matcher))
-                .collect(Collectors.toList());
+        WidgetsSearchIndex index = new WidgetsSearchIndex();
+        index.update(dataProvider.getAllWidgets());
+        return index.search(input, () -> false);
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.widget.picker.search;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.search.StringMatcherUtility;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+import com.android.launcher3.widget.model.WidgetsListBaseEntry;
+import com.android.launcher3.widget.model.WidgetsListContentEntry;
+import com.android.launcher3.widget.model.WidgetsListHeaderEntry;
+import com.android.launcher3.widget.model.WidgetsListSearchHeaderEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Precomputed package titles and widget labels, with their word breaks, used to filter the
+ * widgets list without walking every string again on each keystroke.
+ *
+ * The index is built from the list returned by
+ * {@link com.android.launcher3.popup.PopupDataProvider#getAllWidgets()}, which is replaced
+ * as a whole whenever the widgets model changes, so it is rebuilt only when that list or the
+ * locale changes. This class is not thread safe.
+ */
+public class WidgetsSearchIndex {
+
+    private final ArrayList<PackageEntry> mPackages = new ArrayList<>();
+
+    private List<WidgetsListBaseEntry> mSource;
+    private Locale mLocale;
+    private StringMatcher mMatcher;
+
+    /**
+     * Makes sure the index reflects {@param allWidgets}.
+     */
+    public void update(List<WidgetsListBaseEntry> allWidgets) {
+        Locale locale = Locale.getDefault();
+        if (allWidgets == mSource && locale.equals(mLocale)) {
+            return;
+        }
+        mSource = allWidgets;
+        mLocale = locale;
+        mMatcher = StringMatcher.getInstance();
+        mPackages.clear();
+        for (WidgetsListBaseEntry entry : allWidgets) {
+            if (entry instanceof WidgetsListHeaderEntry) {
+                mPackages.add(new PackageEntry((WidgetsListHeaderEntry) entry));
+            }
+        }
+    }
+
+    /**
+     * Returns a search header and a content entry for every package which has widgets
+     * matching {@param query}, or null if {@param isCancelled} returned true meanwhile.
+     */
+    @Nullable
+    public ArrayList<WidgetsListBaseEntry> search(String query, BooleanSupplier isCancelled) {
+        ArrayList<WidgetsListBaseEntry> results = new ArrayList<>();
+        for (PackageEntry entry : mPackages) {
+            if (isCancelled.getAsBoolean()) {
+                return null;
+            }
+            List<WidgetItem> matchedWidgetItems = entry.filter(query, mMatcher);
+            if (!matchedWidgetItems.isEmpty()) {
+                WidgetsListHeaderEntry header = entry.header;
+                results.add(new WidgetsListSearchHeaderEntry(header.mPkgItem,
+                        header.mTitleSectionName, matchedWidgetItems));
+                results.add(new WidgetsListContentEntry(header.mPkgItem,
+                        header.mTitleSectionName, matchedWidgetItems));
+            }
+        }
+        return results;
+    }
+
+    private static class PackageEntry {
+
+        final WidgetsListHeaderEntry header;
+        final String title;
+        final int[] titleBreaks;
+        final String[] labels;
+        final int[][] labelBreaks;
+
+        PackageEntry(WidgetsListHeaderEntry header) {
+            this.header = header;
+            title = header.mPkgItem.title == null ? "" : header.mPkgItem.title.toString();
+            titleBreaks = StringMatcherUtility.getWordBreaks(title);
+
+            int count = header.mWidgets.size();
+            labels = new String[count];
+            labelBreaks = new int[count][];
+            for (int i = 0; i < count; i++) {
+                String label = header.mWidgets.get(i).label;
+                labels[i] = label == null ? "" : label;
+                labelBreaks[i] = StringMatcherUtility.getWordBreaks(labels[i]);
+            }
+        }
+
+        List<WidgetItem> filter(String query, StringMatcher matcher) {
+            if (StringMatcherUtility.matches(query, title, titleBreaks, matcher)) {
+                return header.mWidgets;
+            }
+            List<WidgetItem> matched = new ArrayList<>();
+            for (int i = 0; i < labels.length; i++) {
+                if (StringMatcherUtility.matches(query, labels[i], labelBreaks[i], matcher)) {
+                    matched.add(header.mWidgets.get(i));
+                }
+            }
+            return matched;
+        }
+    }
+}
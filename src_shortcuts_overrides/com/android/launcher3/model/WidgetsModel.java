@@ -112,6 +112,15 @@ public class WidgetsModel {
      */
     public List<ComponentWithLabelAndIcon> update(
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
+        return update(app, packageUser, null);
+    }
+
+    /**
+     * Same as {@link #update(LauncherAppState, PackageUserKey)}, using {@param providers} if
+     * they were already queried for the same {@param packageUser}.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            @Nullable PackageUserKey packageUser, @Nullable ProviderLists providers) {
         Preconditions.assertWorkerThread();
 
         Context context = app.getContext();
@@ -121,9 +130,12 @@ public class WidgetsModel {
             InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
             PackageManager pm = app.getContext().getPackageManager();
 
+            if (providers == null) {
+                providers = ProviderLists.query(context, packageUser);
+            }
+
             // Widgets
-            WidgetManagerHelper widgetManager = new WidgetManagerHelper(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
+            for (AppWidgetProviderInfo widgetInfo : providers.widgets) {
                 LauncherAppWidgetProviderInfo launcherWidgetInfo =
                         LauncherAppWidgetProviderInfo.fromProviderInfo(context, widgetInfo);
 
@@ -133,8 +145,7 @@ public class WidgetsModel {
             }
 
             // Shortcuts
-            for (ShortcutConfigActivityInfo info :
-                    queryList(context, packageUser)) {
+            for (ShortcutConfigActivityInfo info : providers.shortcuts) {
                 widgetsAndShortcuts.add(new WidgetItem(info, app.getIconCache(), pm));
                 updatedItems.add(info);
             }
@@ -154,6 +165,28 @@ public class WidgetsModel {
         return updatedItems;
     }
 
+    /**
+     * Widget providers and shortcut config activities as returned by the system. Querying
+     * them only involves binder calls, so unlike {@link #update} it can be done on any thread.
+     */
+    public static class ProviderLists {
+
+        public final List<AppWidgetProviderInfo> widgets;
+        public final List<ShortcutConfigActivityInfo> shortcuts;
+
+        private ProviderLists(List<AppWidgetProviderInfo> widgets,
+                List<ShortcutConfigActivityInfo> shortcuts) {
+            this.widgets = widgets;
+            this.shortcuts = shortcuts;
+        }
+
+        public static ProviderLists query(Context context, @Nullable PackageUserKey packageUser) {
+            return new ProviderLists(
+                    new WidgetManagerHelper(context).getAllProviders(packageUser),
+                    queryList(context, packageUser));
+        }
+    }
+
     private synchronized void setWidgetsAndShortcuts(ArrayList<WidgetItem> rawWidgetsShortcuts,
                                                      LauncherAppState app, @Nullable PackageUserKey packageUser) {
         if (DEBUG) {